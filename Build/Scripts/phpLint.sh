@@ -0,0 +1,41 @@
+#!/bin/bash
+
+#########################
+#
+# Lint php files with php -l on all available cores.
+#
+# Files are read from a list, one per line, or found below the current
+# directory if no list is given. Each worker handles batches of files to
+# keep process overhead low. Files failing lint are printed, and appended
+# to an optional second file, the script returns with not 0 then.
+#
+# This script expects to be run from the core root.
+#
+##########################
+
+FILE_LIST=$1
+export FAILED_LIST=${2:-/dev/null}
+
+if [[ -z "${FILE_LIST}" ]]; then
+    FILE_LIST=$(mktemp)
+    find . -name \*.php -not -path "./vendor/*" -not -path "./bin/*" -not -path "./typo3temp/*" > ${FILE_LIST}
+fi
+
+BATCH_SIZE=100
+WORKERS=$(nproc 2>/dev/null || echo 2)
+
+FAILED=$(xargs -d '\n' -r -n ${BATCH_SIZE} -P ${WORKERS} bash -c '
+    for FILE in "$@"; do
+        if ! php -n -c /etc/php/cli-no-xdebug/php.ini -l "${FILE}" >/dev/null; then
+            echo "${FILE}"
+        fi
+    done
+' lint < ${FILE_LIST})
+
+if [[ -n "${FAILED}" ]]; then
+    echo "${FAILED}" >> ${FAILED_LIST}
+    echo "Lint failed for:"
+    echo "${FAILED}"
+    exit 1
+fi
+exit 0
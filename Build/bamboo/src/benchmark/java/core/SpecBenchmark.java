@@ -0,0 +1,100 @@
+package core;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atlassian.bamboo.specs.api.builders.plan.Plan;
+import com.atlassian.bamboo.specs.api.model.plan.PlanProperties;
+import com.atlassian.bamboo.specs.api.util.EntityPropertiesBuilders;
+
+/**
+ * Plan generation and offline validation of both specs, with the number
+ * of test chunk jobs scaled to see how generation time grows.
+ *
+ * Run with 'mvn -Pbenchmark verify', allocation is reported by '-prof gc'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpecBenchmark {
+
+    @Param({"PreMerge", "Nightly"})
+    public String spec;
+
+    /**
+     * Number of jobs per acceptance and functional database chunk group
+     */
+    @Param({"default", "20", "50"})
+    public String chunks;
+
+    protected Plan plan;
+
+    @Setup(Level.Trial)
+    public void createPlanForBuild() {
+        this.plan = this.createPlanBenchmark();
+    }
+
+    @Benchmark
+    public Plan createPlanBenchmark() {
+        if (this.spec.equals("Nightly")) {
+            NightlySpec nightlySpec = new NightlySpec();
+            if (!this.chunks.equals("default")) {
+                int numberOfChunks = Integer.parseInt(this.chunks);
+                nightlySpec.numberOfAcceptanceTestJobs = numberOfChunks;
+                nightlySpec.numberOfFunctionalMysqlJobs = numberOfChunks;
+                nightlySpec.numberOfFunctionalMssqlJobs = numberOfChunks;
+                nightlySpec.numberOfFunctionalPgsqlJobs = numberOfChunks;
+                nightlySpec.numberOfFunctionalSqliteJobs = numberOfChunks;
+            }
+            return nightlySpec.createPlan();
+        }
+        PreMergeSpec preMergeSpec = new PreMergeSpec();
+        if (!this.chunks.equals("default")) {
+            int numberOfChunks = Integer.parseInt(this.chunks);
+            preMergeSpec.numberOfAcceptanceTestJobs = numberOfChunks;
+            preMergeSpec.numberOfFunctionalMysqlJobs = numberOfChunks;
+            preMergeSpec.numberOfFunctionalMssqlJobs = numberOfChunks;
+            preMergeSpec.numberOfFunctionalPgsqlJobs = numberOfChunks;
+            preMergeSpec.numberOfFunctionalSqliteJobs = numberOfChunks;
+        }
+        return preMergeSpec.createPlan();
+    }
+
+    @Benchmark
+    public PlanProperties buildBenchmark() {
+        return EntityPropertiesBuilders.build(this.plan);
+    }
+
+    @Benchmark
+    public PlanProperties createPlanAndBuildBenchmark() {
+        return EntityPropertiesBuilders.build(this.createPlanBenchmark());
+    }
+}
@@ -14,6 +14,11 @@ package core;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 import com.atlassian.bamboo.specs.api.builders.BambooKey;
 import com.atlassian.bamboo.specs.api.builders.permission.PermissionType;
@@ -22,6 +27,7 @@ import com.atlassian.bamboo.specs.api.builders.permission.PlanPermissions;
 import com.atlassian.bamboo.specs.api.builders.plan.Job;
 import com.atlassian.bamboo.specs.api.builders.plan.PlanIdentifier;
 import com.atlassian.bamboo.specs.api.builders.plan.artifact.Artifact;
+import com.atlassian.bamboo.specs.api.builders.plan.artifact.ArtifactSubscription;
 import com.atlassian.bamboo.specs.api.builders.plan.configuration.AllOtherPluginsConfiguration;
 import com.atlassian.bamboo.specs.api.builders.plan.configuration.PluginConfiguration;
 import com.atlassian.bamboo.specs.api.builders.requirement.Requirement;
@@ -49,6 +55,231 @@ abstract public class AbstractCoreSpec {
 
     protected String testingFrameworkBuildPath = "vendor/typo3/testing-framework/Resources/Core/Build/";
 
+    /**
+     * Agent local directory on the bamboo-data volume, kept between jobs
+     */
+    protected String agentCachePath = "/srv/bamboo/xml-data/build-dir/cache/";
+
+    /**
+     * Phpunit configurations of functional chunks, shared by the split job
+     */
+    protected String functionalChunkPath = "Build/bamboo/target/functional-chunks/";
+
+    /**
+     * Functional test durations, job artifacts read by the split job of the next plan run
+     */
+    protected String functionalDurationsPath = "Build/bamboo/target/functional-durations/";
+
+    /**
+     * Restore vendor/ and bin/ from an agent local cache keyed by composer.json,
+     * composer.lock and php image instead of running composer install in each job
+     */
+    protected boolean useComposerVendorCache = false;
+
+    /**
+     * Number of vendor directories kept in agent cache
+     */
+    protected int composerVendorCacheSize = 5;
+
+    /**
+     * Clone, cherry pick and composer install once in the preparation stage,
+     * other jobs unpack the shared workspace artifact
+     */
+    protected boolean usePreparedWorkspace = false;
+
+    protected String preparedWorkspacePath = "Build/bamboo/target/workspace/";
+
+    /**
+     * Run commands of script tasks via docker exec in one php container per job
+     * instead of a docker run per command
+     */
+    protected boolean useToolboxContainer = false;
+
+    /**
+     * Skip jobs whose test suite is not affected by the files changed in the
+     * gerrit patch set, and restrict functional and unit tests to affected extensions
+     */
+    protected boolean useChangeImpactAnalysis = false;
+
+    /**
+     * Stop running builds of older patch sets of the same gerrit change at the start
+     * of the main stage, or this build if a newer patch set is already running
+     */
+    protected boolean useStopSupersededBuilds = false;
+
+    protected String changeImpactPath = "Build/bamboo/target/impact/";
+
+    /**
+     * Skip unit and functional jobs whose inputs are identical to the ones of a job
+     * that passed before on the agent, the stored junit reports are parsed instead
+     */
+    protected boolean useTestResultCache = false;
+
+    /**
+     * Number of passed job results kept in agent cache
+     */
+    protected int testResultCacheSize = 500;
+
+    /**
+     * If this file exists, it holds the reason the job is skipped for and
+     * script tasks exit early
+     */
+    protected String skipJobPath = "Build/bamboo/target/skip-job";
+
+    /**
+     * Check out core from an agent local bare mirror via git alternates instead
+     * of a full clone per job. The mirror is fetched only if it misses the revision.
+     */
+    protected boolean useGitMirror = false;
+
+    protected String gitMirrorPath = "/srv/bamboo/xml-data/build-dir/cache/git-mirror/core.git";
+
+    /**
+     * History depth of the git mirror, 0 for full history
+     */
+    protected int gitMirrorDepth = 0;
+
+    /**
+     * Start functional test databases from an agent local snapshot of an
+     * initialized data directory instead of initializing an empty server per job
+     */
+    protected boolean useDatabaseSnapshots = false;
+
+    /**
+     * Lease mariadb and postgres from an agent local pool of running containers instead
+     * of starting them per job. A returned database server is reset and health checked.
+     * Not enabled in any plan yet, pooled servers outlive jobs on the agents.
+     */
+    protected boolean useDatabasePool = false;
+
+    /**
+     * Seconds a pooled database container may stay unused before it is removed
+     */
+    protected int databasePoolIdleTimeout = 1800;
+
+    /**
+     * Let DataHandler functional tests restore scenario data sets from a native copy
+     * of their first import on mariadb and postgres instead of parsing the csv again
+     */
+    protected boolean useDatabaseFixtureSnapshots = false;
+
+    /**
+     * Keep throwaway test state on tmpfs instead of the bamboo-data volume: typo3temp/var/tests
+     * with instances and sqlite databases of functional jobs, and data directories of database
+     * siblings, which are on tmpfs anyways and get sized with this.
+     */
+    protected boolean useTmpfsStorage = false;
+
+    /**
+     * Size of the data directory tmpfs of mariadb and postgres siblings
+     */
+    protected String databaseTmpfsSize = "1g";
+
+    /**
+     * Size of the typo3temp/var/tests tmpfs of functional mariadb and postgres jobs
+     */
+    protected String functionalTmpfsSize = "1g";
+
+    /**
+     * Size of the typo3temp/var/tests tmpfs of functional sqlite jobs, holds the databases too
+     */
+    protected String functionalSqliteTmpfsSize = "3g";
+
+    /**
+     * Docker options of the typo3temp/var/tests tmpfs of a job, written while preparing
+     * the workspace, so the first container of the job already has the mount
+     */
+    protected String testTmpfsPath = "Build/bamboo/target/test-tmpfs";
+
+    /**
+     * Start checks of the early stage along with the main stage. A failing check
+     * stops the plan run, so main stage jobs free their agents. Needs global
+     * variables stopPlanRunUser and stopPlanRunPassword of a user allowed to stop builds.
+     */
+    protected boolean useSpeculativeMainStage = false;
+
+    /**
+     * Script tasks append timed phases as json lines to a job artifact,
+     * PhaseTimingReport rolls them up per plan run
+     */
+    protected boolean usePhaseTimings = false;
+
+    protected String phaseTimingPath = "Build/bamboo/target/timing/";
+
+    /**
+     * Default of plan variable testQueueUrl. If set, functional jobs pull chunks
+     * from this TestQueueServer until all are done instead of running one fixed chunk.
+     */
+    protected String testQueueUrl = "";
+
+    /**
+     * Chunks planned per functional job for the test queue
+     */
+    protected int testQueueChunksPerJob = 4;
+
+    /**
+     * Rerun failed functional tests once within the job, if no more than
+     * failedTestRetryLimit failed. A job with a flaky test needs no rerun then.
+     */
+    protected boolean useFailedTestRetry = false;
+
+    protected int failedTestRetryLimit = 10;
+
+    /**
+     * Parallel phpunit processes per functional job, each running a chunk of a plan
+     * with this many times more chunks. Workers use own databases. Needs the toolbox
+     * container, the docker run per call uses a fixed container name.
+     */
+    protected int numberOfFunctionalTestWorkers = 1;
+
+    /**
+     * Maximum number of concurrent checks of jobs running independent checks,
+     * one runs them as sequential tasks
+     */
+    protected int checksParallelism = 4;
+
+    protected String checksPath = "Build/bamboo/target/checks";
+
+    /**
+     * Phpunit runs with CLI opcache storing compiled scripts in a file cache, functional
+     * jobs with more than one worker warm it up before their workers start. All phpunit
+     * processes of a job share it, cache entries are keyed by absolute path, which differs
+     * between jobs.
+     */
+    protected boolean useOpcacheFileCache = false;
+
+    protected String opcacheFileCachePath = "Build/bamboo/target/opcache/";
+
+    /**
+     * Install Build/node_modules from an agent local yarn offline mirror keyed by
+     * Build/yarn.lock instead of fetching all packages from the registry per job
+     */
+    protected boolean useYarnOfflineMirror = false;
+
+    /**
+     * Number of yarn offline mirrors kept in agent cache
+     */
+    protected int yarnOfflineMirrorCacheSize = 5;
+
+    /**
+     * Run javascript unit tests, npm lint and build-js in one job with a single
+     * yarn install instead of the two jobs JSUT and LSTS. Lint and karma run
+     * concurrently as checks, build-js runs afterwards, it rewrites the files karma loads.
+     */
+    protected boolean useFrontendPipeline = false;
+
+    /**
+     * Restore the output of npm run build-js from an agent local cache keyed by the
+     * git blob hashes of all TypeScript sources and build files instead of compiling.
+     * The restored files are drift checked like compiled ones.
+     */
+    protected boolean useTypeScriptBuildCache = false;
+
+    /**
+     * Number of build-js outputs kept in agent cache
+     */
+    protected int typeScriptBuildCacheSize = 20;
+
     /**
      * @todo This can be removed if acceptance mysql tests are rewritten and active again
      */
@@ -150,19 +381,24 @@ abstract public class AbstractCoreSpec {
         return new Job("Validate composer.json", new BambooKey("VC"))
         .description("Validate composer.json before actual tests are executed")
         .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+        .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+        .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, false))
         .tasks(
-            this.getTaskGitCloneRepository(),
-            this.getTaskGitCherryPick(),
             new ScriptTask()
                 .description("composer validate")
                 .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                 .inlineBody(
                     this.getScriptTaskBashInlineBody() +
                     this.getScriptTaskComposer(requirementIdentifier) +
-                    "composer validate"
+                    this.getScriptTaskStopPlanRunFunction() +
+                    "composer validate" + this.getScriptTaskStopPlanRunOnFailure("composer.json is invalid")
                 )
                 .environmentVariables(this.composerRootVersionEnvironment)
         )
+        .finalTasks(
+            this.getTaskStopToolbox()
+        )
+        .artifacts(this.getArtifactsPhaseTimings())
         .requirements(
             this.getRequirementDocker10()
         )
@@ -178,10 +414,10 @@ abstract public class AbstractCoreSpec {
         return new Job("Accept inst my " + requirementIdentifier, new BambooKey("ACINSTMY" + requirementIdentifier))
             .description("Install TYPO3 on mariadb and load introduction package " + requirementIdentifier)
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+            .tasks(this.getTasksSkipUnaffectedJob("acceptance", "typo3temp/var/tests/AcceptanceReports/reports.xml"))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
                 this.getTaskPrepareAcceptanceTest(),
                 this.getTaskDockerDependenciesAcceptanceInstallMariadb10(),
                 new ScriptTask()
@@ -189,27 +425,20 @@ abstract public class AbstractCoreSpec {
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function codecept() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e typo3InstallMysqlDatabaseHost=${typo3InstallMysqlDatabaseHost} \\\n" +
-                        "        -e typo3InstallMysqlDatabaseName=${typo3InstallMysqlDatabaseName} \\\n" +
-                        "        -e typo3InstallMysqlDatabaseUsername=${typo3InstallMysqlDatabaseUsername} \\\n" +
-                        "        -e typo3InstallMysqlDatabasePassword=${typo3InstallMysqlDatabasePassword} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./bin/codecept $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction(
+                            "codecept", requirementIdentifier, true, "cd ${PWD}; ./bin/codecept $*",
+                            "typo3InstallMysqlDatabaseHost=${typo3InstallMysqlDatabaseHost}",
+                            "typo3InstallMysqlDatabaseName=${typo3InstallMysqlDatabaseName}",
+                            "typo3InstallMysqlDatabaseUsername=${typo3InstallMysqlDatabaseUsername}",
+                            "typo3InstallMysqlDatabasePassword=${typo3InstallMysqlDatabasePassword}"
+                        ) +
                         "\n" +
                         "codecept run Install -d -c typo3/sysext/core/Tests/codeception.yml --env=mysql --xml reports.xml --html reports.html\n"
                     )
             )
             .finalTasks(
                 this.getTaskStopDockerDependencies(),
+                this.getTaskStopToolbox(),
                 new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                     .resultDirectories("typo3temp/var/tests/AcceptanceReports/reports.xml")
             )
@@ -218,6 +447,7 @@ abstract public class AbstractCoreSpec {
                 .copyPattern("typo3temp/var/tests/AcceptanceReports/")
                 .shared(false)
             )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -233,10 +463,10 @@ abstract public class AbstractCoreSpec {
         return new Job("Accept inst pg " + requirementIdentifier, new BambooKey("ACINSTPG" + requirementIdentifier))
         .description("Install TYPO3 on pgsql and load introduction package " + requirementIdentifier)
         .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+        .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+        .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+        .tasks(this.getTasksSkipUnaffectedJob("acceptance", "typo3temp/var/tests/AcceptanceReports/reports.xml"))
         .tasks(
-            this.getTaskGitCloneRepository(),
-            this.getTaskGitCherryPick(),
-            this.getTaskComposerInstall(requirementIdentifier),
             this.getTaskPrepareAcceptanceTest(),
             this.getTaskDockerDependenciesAcceptanceInstallPostgres10(),
             new ScriptTask()
@@ -244,27 +474,20 @@ abstract public class AbstractCoreSpec {
                 .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                 .inlineBody(
                     this.getScriptTaskBashInlineBody() +
-                    "function codecept() {\n" +
-                    "    docker run \\\n" +
-                    "        -u ${HOST_UID} \\\n" +
-                    "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                    "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                    "        -e typo3InstallPostgresqlDatabaseHost=${typo3InstallPostgresqlDatabaseHost} \\\n" +
-                    "        -e typo3InstallPostgresqlDatabaseName=${typo3InstallPostgresqlDatabaseName} \\\n" +
-                    "        -e typo3InstallPostgresqlDatabaseUsername=${typo3InstallPostgresqlDatabaseUsername} \\\n" +
-                    "        -e typo3InstallPostgresqlDatabasePassword=${typo3InstallPostgresqlDatabasePassword} \\\n" +
-                    "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                    "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                    "        --rm \\\n" +
-                    "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                    "        bin/bash -c \"cd ${PWD}; ./bin/codecept $*\"\n" +
-                    "}\n" +
+                    this.getScriptTaskDockerFunction(
+                        "codecept", requirementIdentifier, true, "cd ${PWD}; ./bin/codecept $*",
+                        "typo3InstallPostgresqlDatabaseHost=${typo3InstallPostgresqlDatabaseHost}",
+                        "typo3InstallPostgresqlDatabaseName=${typo3InstallPostgresqlDatabaseName}",
+                        "typo3InstallPostgresqlDatabaseUsername=${typo3InstallPostgresqlDatabaseUsername}",
+                        "typo3InstallPostgresqlDatabasePassword=${typo3InstallPostgresqlDatabasePassword}"
+                    ) +
                     "\n" +
                     "codecept run Install -d -c typo3/sysext/core/Tests/codeception.yml --env=postgresql --xml reports.xml --html reports.html\n"
                 )
         )
         .finalTasks(
             this.getTaskStopDockerDependencies(),
+            this.getTaskStopToolbox(),
             new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                 .resultDirectories("typo3temp/var/tests/AcceptanceReports/reports.xml")
         )
@@ -273,6 +496,7 @@ abstract public class AbstractCoreSpec {
             .copyPattern("typo3temp/var/tests/AcceptanceReports/")
             .shared(false)
         )
+        .artifacts(this.getArtifactsPhaseTimings())
         .requirements(
             this.getRequirementDocker10()
         )
@@ -288,10 +512,10 @@ abstract public class AbstractCoreSpec {
         return new Job("Accept inst sq " + requirementIdentifier, new BambooKey("ACINSTSQ" + requirementIdentifier))
         .description("Install TYPO3 on sqlite and load introduction package " + requirementIdentifier)
         .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+        .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+        .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+        .tasks(this.getTasksSkipUnaffectedJob("acceptance", "typo3temp/var/tests/AcceptanceReports/reports.xml"))
         .tasks(
-            this.getTaskGitCloneRepository(),
-            this.getTaskGitCherryPick(),
-            this.getTaskComposerInstall(requirementIdentifier),
             this.getTaskPrepareAcceptanceTest(),
             this.getTaskDockerDependenciesAcceptanceInstallSqlite(),
             new ScriptTask()
@@ -299,23 +523,14 @@ abstract public class AbstractCoreSpec {
                 .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                 .inlineBody(
                     this.getScriptTaskBashInlineBody() +
-                    "function codecept() {\n" +
-                    "    docker run \\\n" +
-                    "        -u ${HOST_UID} \\\n" +
-                    "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                    "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                    "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                    "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                    "        --rm \\\n" +
-                    "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                    "        bin/bash -c \"cd ${PWD}; ./bin/codecept $*\"\n" +
-                    "}\n" +
+                    this.getScriptTaskDockerFunction("codecept", requirementIdentifier, true, "cd ${PWD}; ./bin/codecept $*") +
                     "\n" +
                     "codecept run Install -d -c typo3/sysext/core/Tests/codeception.yml --env=sqlite --xml reports.xml --html reports.html\n"
                 )
         )
         .finalTasks(
             this.getTaskStopDockerDependencies(),
+            this.getTaskStopToolbox(),
             new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                 .resultDirectories("typo3temp/var/tests/AcceptanceReports/reports.xml")
         )
@@ -324,6 +539,7 @@ abstract public class AbstractCoreSpec {
             .copyPattern("typo3temp/var/tests/AcceptanceReports/")
             .shared(false)
         )
+        .artifacts(this.getArtifactsPhaseTimings())
         .requirements(
             this.getRequirementDocker10()
         )
@@ -349,16 +565,16 @@ abstract public class AbstractCoreSpec {
             jobs.add(new Job("Accept my " + requirementIdentifier + " " + formattedI, new BambooKey("ACMY" + requirementIdentifier + formattedI))
                 .description("Run acceptance tests" + requirementIdentifier)
                 .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+                .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+                .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+                .tasks(this.getTasksSkipUnaffectedJob("acceptance", "typo3temp/var/tests/AcceptanceReports/reports.xml"))
                 .tasks(
-                    this.getTaskGitCloneRepository(),
-                    this.getTaskGitCherryPick(),
-                    this.getTaskComposerInstall(requirementIdentifier),
                     this.getTaskPrepareAcceptanceTest(),
                     new ScriptTask()
                         .description("Split acceptance tests")
                         .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                         .inlineBody(
-                            this.getScriptTaskBashInlineBody() +
+                            this.getScriptTaskBashInlineBody("plan") +
                             "./" + this.testingFrameworkBuildPath + "Scripts/splitAcceptanceTests.sh " + numberOfChunks + "\n"
                         ),
                     new CommandTask()
@@ -369,6 +585,7 @@ abstract public class AbstractCoreSpec {
                 )
                 .finalTasks(
                     this.getTaskStopDockerDependencies(),
+                    this.getTaskStopToolbox(),
                     new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                         .resultDirectories("typo3temp/var/tests/AcceptanceReports/reports.xml")
                 )
@@ -377,6 +594,7 @@ abstract public class AbstractCoreSpec {
                     .copyPattern("typo3temp/var/tests/AcceptanceReports/")
                     .shared(false)
                 )
+                .artifacts(this.getArtifactsPhaseTimings())
                 .requirements(
                     this.getRequirementDocker10()
                 )
@@ -388,6 +606,132 @@ abstract public class AbstractCoreSpec {
         return jobs;
     }
 
+    /**
+     * Job creating the workspace all later jobs start with: core,
+     * the gerrit patch set and composer dependencies.
+     *
+     * @param String requirementIdentifier
+     */
+    protected Job getJobPrepareWorkspace(String requirementIdentifier) {
+        return new Job("Prepare workspace", new BambooKey("PREPWS"))
+            .description("Clone core, cherry pick patch set and composer install once for all jobs")
+            .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .tasks(
+                this.getTaskGitCloneRepository(),
+                this.getTaskGitCherryPick(),
+                this.getTaskComposerInstall(requirementIdentifier)
+            )
+            .tasks(this.getTasksAnalyzeChangeImpact())
+            .tasks(
+                new ScriptTask()
+                    .description("Pack workspace")
+                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                    .inlineBody(
+                        this.getScriptTaskBashInlineBody("pack") +
+                        "mkdir -p " + this.preparedWorkspacePath + "\n" +
+                        "tar --exclude=./" + this.preparedWorkspacePath + " --exclude=./" + this.phaseTimingPath + " -czf " + this.preparedWorkspacePath + "workspace.tar.gz ."
+                    )
+            )
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(new Artifact()
+                .name("Prepared workspace")
+                .copyPattern("workspace.tar.gz")
+                .location(this.preparedWorkspacePath)
+                .shared(true)
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
+            .requirements(
+                this.getRequirementDocker10()
+            )
+            .cleanWorkingDirectory(true);
+    }
+
+    /**
+     * Job planning functional test chunks once for all functional jobs of a plan run.
+     * Chunks are balanced by durations of previous runs, taken from the artifacts of
+     * the latest run of this plan on the bamboo server, so all agents plan the same:
+     * The duration history of its split job, updated by the durations of its mysql,
+     * pgsql and sqlite jobs. Durations of a file on several databases are averaged.
+     *
+     * @param String requirementIdentifier
+     * @param int numberOfMysqlChunks
+     * @param int numberOfPgsqlChunks
+     * @param int numberOfSqliteChunks
+     */
+    protected Job getJobSplitFunctionalTests(String requirementIdentifier, int numberOfMysqlChunks, int numberOfPgsqlChunks, int numberOfSqliteChunks) {
+        List<String> jobKeys = new ArrayList<String>();
+        jobKeys.addAll(this.getFunctionalJobKeys("FMY", requirementIdentifier, numberOfMysqlChunks));
+        jobKeys.addAll(this.getFunctionalJobKeys("FPG", requirementIdentifier, numberOfPgsqlChunks));
+        jobKeys.addAll(this.getFunctionalJobKeys("FSL", requirementIdentifier, numberOfSqliteChunks));
+        TreeSet<Integer> distinctNumbersOfChunks = new TreeSet<Integer>();
+        for (int numberOfChunks : new int[] {numberOfMysqlChunks, numberOfPgsqlChunks, numberOfSqliteChunks}) {
+            distinctNumbersOfChunks.add(numberOfChunks);
+            distinctNumbersOfChunks.add(numberOfChunks * this.testQueueChunksPerJob);
+            distinctNumbersOfChunks.add(numberOfChunks * this.getNumberOfFunctionalTestWorkers());
+        }
+        String chunkArguments = "";
+        for (int numberOfChunks : distinctNumbersOfChunks) {
+            chunkArguments += " " + numberOfChunks;
+        }
+
+        return new Job("Split functional tests", new BambooKey("FSPLIT"))
+            .description("Plan functional test chunks by durations of previous runs")
+            .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .tasks(
+                this.getTaskGitCloneRepository(),
+                this.getTaskGitCherryPick(),
+                this.getTaskComposerInstall(requirementIdentifier)
+            )
+            .tasks(this.getTasksAnalyzeChangeImpact())
+            .tasks(
+                new ScriptTask()
+                    .description("Plan functional test chunks")
+                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                    .inlineBody(
+                        this.getScriptTaskBashInlineBody("plan") +
+                        this.getScriptTaskBambooTool() +
+                        "# Artifacts of the latest run, a missing one is no error\n" +
+                        "function downloadDurations() {\n" +
+                        "    curl -sfL -o $2 " + bambooServerName + "/browse/${bamboo_planKey}/latest/artifact/$1/Functional-durations/durations.xml || rm -f $2\n" +
+                        "}\n" +
+                        "\n" +
+                        "mkdir -p " + this.functionalDurationsPath + "history\n" +
+                        "downloadDurations FSPLIT " + this.functionalDurationsPath + "history/durations.xml\n" +
+                        "for JOB in " + String.join(" ", jobKeys) + "; do\n" +
+                        "    downloadDurations ${JOB} " + this.functionalDurationsPath + "${JOB}.xml\n" +
+                        "done\n" +
+                        "EXTENSIONS=$(sed -n 's/^extensions=//p' " + this.changeImpactPath + "impact.properties 2>/dev/null)\n" +
+                        "bambooTool FunctionalTestChunkPlanner --extensions=\"${EXTENSIONS}\" --history=" + this.functionalDurationsPath + "history/durations.xml " +
+                            this.testingFrameworkBuildPath + "FunctionalTests.xml " +
+                            this.functionalDurationsPath + " " +
+                            this.functionalChunkPath +
+                            chunkArguments
+                    )
+            )
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(new Artifact()
+                .name("Functional chunks")
+                .copyPattern("**/*.xml")
+                .location(this.functionalChunkPath)
+                .shared(true)
+            )
+            .artifacts(new Artifact()
+                .name("Functional durations")
+                .copyPattern("durations.xml")
+                .location(this.functionalDurationsPath + "history")
+                .shared(false)
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
+            .requirements(
+                this.getRequirementDocker10()
+            )
+            .cleanWorkingDirectory(true);
+    }
+
     /**
      * Jobs for mysql based functional tests
      *
@@ -405,43 +749,45 @@ abstract public class AbstractCoreSpec {
             jobs.add(new Job("Func mysql " + requirementIdentifier + " " + formattedI, new BambooKey("FMY" + requirementIdentifier + formattedI))
                 .description("Run functional tests on mysql DB " + requirementIdentifier)
                 .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+                .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+                .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true, this.functionalTmpfsSize))
+                .tasks(this.getTasksSkipUnaffectedJob("functional", "test-reports/phpunit.xml"))
+                .tasks(this.getTasksRestoreTestResult(requirementIdentifier, "functional mysql", this.getFunctionalChunkFiles(numberOfChunks, i), true))
+                .tasks(this.getTaskDockerDependenciesFunctionalMariadb10())
+                .tasks(this.getTasksOpcacheWarmup(requirementIdentifier))
                 .tasks(
-                    this.getTaskGitCloneRepository(),
-                    this.getTaskGitCherryPick(),
-                    this.getTaskComposerInstall(requirementIdentifier),
-                    this.getTaskDockerDependenciesFunctionalMariadb10(),
-                    this.getTaskSplitFunctionalJobs(numberOfChunks, requirementIdentifier),
                     new ScriptTask()
                         .description("Run phpunit with functional chunk " + formattedI)
                         .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                         .inlineBody(
                             this.getScriptTaskBashInlineBody() +
-                            "function phpunit() {\n" +
-                            "    docker run \\\n" +
-                            "        -u ${HOST_UID} \\\n" +
-                            "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                            "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                            "        -e typo3DatabaseName=func_test \\\n" +
-                            "        -e typo3DatabaseUsername=root \\\n" +
-                            "        -e typo3DatabasePassword=funcp \\\n" +
-                            "        -e typo3DatabaseHost=mariadb10 \\\n" +
-                            "        -e typo3TestingRedisHost=${BAMBOO_COMPOSE_PROJECT_NAME}sib_redis4_1 \\\n" +
-                            "        -e typo3TestingMemcachedHost=${BAMBOO_COMPOSE_PROJECT_NAME}sib_memcached1-5_1 \\\n" +
-                            "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                            "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                            "        --rm \\\n" +
-                            "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                            "        bin/bash -c \"cd ${PWD}; ./bin/phpunit $*\"\n" +
-                            "}\n" +
+                            this.getScriptTaskDockerFunction(
+                                "phpunit", requirementIdentifier, true, "cd ${PWD}; " + this.getPhpunitRuntime() + " bin/phpunit $*",
+                                "typo3DatabaseName=func_test${PHPUNIT_WORKER}",
+                                "typo3DatabaseUsername=root",
+                                "typo3DatabasePassword=funcp",
+                                "typo3DatabaseHost=mariadb10",
+                                "typo3DatabaseFixtureSnapshots=" + (this.useDatabaseFixtureSnapshots ? "1" : "0"),
+                                "typo3TestingRedisHost=${BAMBOO_COMPOSE_PROJECT_NAME}sib_redis4_1",
+                                "typo3TestingMemcachedHost=${BAMBOO_COMPOSE_PROJECT_NAME}sib_memcached1-5_1"
+                            ) +
                             "\n" +
-                            "phpunit --log-junit test-reports/phpunit.xml -c " + this.testingFrameworkBuildPath + "FunctionalTests-Job-" + i + ".xml"
+                            this.getScriptTaskRunFunctionalChunks("phpunit", "FMY", numberOfChunks, i)
                         )
                 )
+                .tasks(this.getTasksStoreTestResult())
                 .finalTasks(
                     this.getTaskStopDockerDependencies(),
+                    this.getTaskStopToolbox(),
+                    this.getTaskStoreFunctionalTestDurations(),
                     new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
-                        .resultDirectories("test-reports/phpunit.xml")
+                        .resultDirectories("test-reports/*.xml")
+                )
+                .artifactSubscriptions(
+                    this.getArtifactSubscriptionFunctionalChunks()
                 )
+                .artifacts(this.getArtifactFunctionalTestDurations())
+                .artifacts(this.getArtifactsPhaseTimings())
                 .requirements(
                     this.getRequirementDocker10()
                 )
@@ -471,10 +817,9 @@ abstract public class AbstractCoreSpec {
             jobs.add(new Job("Func mssql " + requirementIdentifier + " " + formattedI, new BambooKey("FMS" + requirementIdentifier + formattedI))
                 .description("Run functional tests on mysql DB " + requirementIdentifier)
                 .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+                .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+                .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
                 .tasks(
-                    this.getTaskGitCloneRepository(),
-                    this.getTaskGitCherryPick(),
-                    this.getTaskComposerInstall(requirementIdentifier),
                     this.getTaskSplitFunctionalJobs(numberOfChunks, requirementIdentifier),
                     new ScriptTask()
                         .description("Run phpunit with functional chunk " + formattedI)
@@ -487,9 +832,11 @@ abstract public class AbstractCoreSpec {
                 )
                 .finalTasks(
                     this.getTaskStopDockerDependencies(),
+                    this.getTaskStopToolbox(),
                     new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                         .resultDirectories("test-reports/phpunit.xml")
                 )
+                .artifacts(this.getArtifactsPhaseTimings())
                 .requirements(
                     this.getRequirementDocker10()
                 )
@@ -518,44 +865,46 @@ abstract public class AbstractCoreSpec {
             jobs.add(new Job("Func pgsql " + requirementIdentifier + " " + formattedI, new BambooKey("FPG" + requirementIdentifier + formattedI))
                 .description("Run functional tests on pgsql DB " + requirementIdentifier)
                 .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+                .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+                .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true, this.functionalTmpfsSize))
+                .tasks(this.getTasksSkipUnaffectedJob("functional", "test-reports/phpunit.xml"))
+                .tasks(this.getTasksRestoreTestResult(requirementIdentifier, "functional pgsql", this.getFunctionalChunkFiles(numberOfChunks, i), true))
+                .tasks(this.getTaskDockerDependenciesFunctionalPostgres10())
+                .tasks(this.getTasksOpcacheWarmup(requirementIdentifier))
                 .tasks(
-                    this.getTaskGitCloneRepository(),
-                    this.getTaskGitCherryPick(),
-                    this.getTaskComposerInstall(requirementIdentifier),
-                    this.getTaskDockerDependenciesFunctionalPostgres10(),
-                    this.getTaskSplitFunctionalJobs(numberOfChunks, requirementIdentifier),
                     new ScriptTask()
                         .description("Run phpunit with functional chunk " + formattedI)
                         .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                         .inlineBody(
                             this.getScriptTaskBashInlineBody() +
-                            "function phpunit() {\n" +
-                            "    docker run \\\n" +
-                            "        -u ${HOST_UID} \\\n" +
-                            "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                            "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                            "        -e typo3DatabaseDriver=pdo_pgsql \\\n" +
-                            "        -e typo3DatabaseName=bamboo \\\n" +
-                            "        -e typo3DatabaseUsername=bamboo \\\n" +
-                            "        -e typo3DatabaseHost=postgres10 \\\n" +
-                            "        -e typo3DatabasePassword=funcp \\\n" +
-                            "        -e typo3TestingRedisHost=redis4 \\\n" +
-                            "        -e typo3TestingMemcachedHost=memcached1-5 \\\n" +
-                            "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                            "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                            "        --rm \\\n" +
-                            "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                            "        bin/bash -c \"cd ${PWD}; ./bin/phpunit $*\"\n" +
-                            "}\n" +
+                            this.getScriptTaskDockerFunction(
+                                "phpunit", requirementIdentifier, true, "cd ${PWD}; " + this.getPhpunitRuntime() + " bin/phpunit $*",
+                                "typo3DatabaseDriver=pdo_pgsql",
+                                "typo3DatabaseName=bamboo${PHPUNIT_WORKER}",
+                                "typo3DatabaseUsername=bamboo",
+                                "typo3DatabaseHost=postgres10",
+                                "typo3DatabasePassword=funcp",
+                                "typo3DatabaseFixtureSnapshots=" + (this.useDatabaseFixtureSnapshots ? "1" : "0"),
+                                "typo3TestingRedisHost=redis4",
+                                "typo3TestingMemcachedHost=memcached1-5"
+                            ) +
                             "\n" +
-                            "phpunit --exclude-group not-postgres --log-junit test-reports/phpunit.xml -c " + this.testingFrameworkBuildPath + "FunctionalTests-Job-" + i + ".xml"
+                            this.getScriptTaskRunFunctionalChunks("phpunit --exclude-group not-postgres", "FPG", numberOfChunks, i)
                         )
                 )
+                .tasks(this.getTasksStoreTestResult())
                 .finalTasks(
                     this.getTaskStopDockerDependencies(),
+                    this.getTaskStopToolbox(),
+                    this.getTaskStoreFunctionalTestDurations(),
                     new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
-                        .resultDirectories("test-reports/phpunit.xml")
+                        .resultDirectories("test-reports/*.xml")
                 )
+                .artifactSubscriptions(
+                    this.getArtifactSubscriptionFunctionalChunks()
+                )
+                .artifacts(this.getArtifactFunctionalTestDurations())
+                .artifacts(this.getArtifactsPhaseTimings())
                 .requirements(
                     this.getRequirementDocker10()
                 )
@@ -583,40 +932,41 @@ abstract public class AbstractCoreSpec {
             jobs.add(new Job("Func sqlite " + requirementIdentifier + " " + formattedI, new BambooKey("FSL" + requirementIdentifier + formattedI))
                 .description("Run functional tests on sqlite DB " + requirementIdentifier)
                 .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+                .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+                .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true, this.functionalSqliteTmpfsSize))
+                .tasks(this.getTasksSkipUnaffectedJob("functional", "test-reports/phpunit.xml"))
+                .tasks(this.getTasksRestoreTestResult(requirementIdentifier, "functional sqlite", this.getFunctionalChunkFiles(numberOfChunks, i), true))
+                .tasks(this.getTaskDockerDependenciesFunctionalSqlite())
+                .tasks(this.getTasksOpcacheWarmup(requirementIdentifier))
                 .tasks(
-                    this.getTaskGitCloneRepository(),
-                    this.getTaskGitCherryPick(),
-                    this.getTaskComposerInstall(requirementIdentifier),
-                    this.getTaskSplitFunctionalJobs(numberOfChunks, requirementIdentifier),
-                    this.getTaskDockerDependenciesFunctionalSqlite(),
                     new ScriptTask()
                         .description("Run phpunit with functional chunk " + formattedI)
                         .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                         .inlineBody(
                             this.getScriptTaskBashInlineBody() +
-                            "function phpunit() {\n" +
-                            "    docker run \\\n" +
-                            "        -u ${HOST_UID} \\\n" +
-                            "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                            "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                            "        -e typo3DatabaseDriver=pdo_sqlite \\\n" +
-                            "        -e typo3TestingRedisHost=redis4 \\\n" +
-                            "        -e typo3TestingMemcachedHost=memcached1-5 \\\n" +
-                            "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                            "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                            "        --rm \\\n" +
-                            "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                            "        bin/bash -c \"cd ${PWD}; ./bin/phpunit $*\"\n" +
-                            "}\n" +
+                            this.getScriptTaskDockerFunction(
+                                "phpunit", requirementIdentifier, true, "cd ${PWD}; " + this.getPhpunitRuntime() + " bin/phpunit $*",
+                                "typo3DatabaseDriver=pdo_sqlite",
+                                "typo3TestingRedisHost=redis4",
+                                "typo3TestingMemcachedHost=memcached1-5"
+                            ) +
                             "\n" +
-                            "phpunit --exclude-group not-sqlite --log-junit test-reports/phpunit.xml -c " + this.testingFrameworkBuildPath + "FunctionalTests-Job-" + i + ".xml"
+                            this.getScriptTaskRunFunctionalChunks("phpunit --exclude-group not-sqlite", "FSL", numberOfChunks, i)
                         )
                 )
+                .tasks(this.getTasksStoreTestResult())
                 .finalTasks(
                     this.getTaskStopDockerDependencies(),
+                    this.getTaskStopToolbox(),
+                    this.getTaskStoreFunctionalTestDurations(),
                     new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
-                        .resultDirectories("test-reports/phpunit.xml")
+                        .resultDirectories("test-reports/*.xml")
+                )
+                .artifactSubscriptions(
+                    this.getArtifactSubscriptionFunctionalChunks()
                 )
+                .artifacts(this.getArtifactFunctionalTestDurations())
+                .artifacts(this.getArtifactsPhaseTimings())
                 .requirements(
                     this.getRequirementDocker10()
                 )
@@ -636,29 +986,23 @@ abstract public class AbstractCoreSpec {
         return new Job("Integration annotations", new BambooKey("IANNO"))
             .description("Check docblock-annotations by executing Build/Scripts/annotationChecker.php script")
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Execute annotations check script")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function annotationChecker() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/Scripts/annotationChecker.php $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction("annotationChecker", requirementIdentifier, false, "cd ${PWD}; ./Build/Scripts/annotationChecker.php $*") +
                         "\n" +
                         "annotationChecker"
                     )
             )
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -671,125 +1015,57 @@ abstract public class AbstractCoreSpec {
      * @param String requirementIdentifier
      */
     protected Job getJobIntegrationVarious(String requirementIdentifier) {
+        LinkedHashMap<String, String> checks = new LinkedHashMap<String, String>();
+        checks.put(
+            "Run repository scanner for exception codes, permissions, xlf files and path length",
+            this.getScriptTaskBambooTool() +
+            "bambooTool RepositoryScanner typo3/\n"
+        );
+        checks.put(
+            "Run git submodule status and verify there are none",
+            "if [[ `git submodule status 2>&1 | wc -l` -ne 0 ]]; then\n" +
+            "    echo \\\"Found a submodule definition in repository\\\";\n" +
+            "    exit 99;\n" +
+            "fi\n"
+        );
+        checks.put(
+            "Run rst check",
+            this.getScriptTaskDockerFunction("validateRstFiles", requirementIdentifier, false, "cd ${PWD}; ./Build/Scripts/validateRstFiles.php $*") +
+            "\n" +
+            "validateRstFiles"
+        );
+        checks.put(
+            "Run extension scanner ReST file reference tester",
+            this.getScriptTaskDockerFunction("extensionScannerRstFileReferences", requirementIdentifier, false, "cd ${PWD}; ./Build/Scripts/extensionScannerRstFileReferences.php $*") +
+            "\n" +
+            "extensionScannerRstFileReferences"
+        );
+        checks.put(
+            "Run functional fixture csv format checker",
+            this.getScriptTaskDockerFunction("checkIntegrityCsvFixtures", requirementIdentifier, false, "cd ${PWD}; ./Build/Scripts/checkIntegrityCsvFixtures.php $*") +
+            "\n" +
+            "checkIntegrityCsvFixtures"
+        );
+        checks.put(
+            "Run composer.json integrity check",
+            this.getScriptTaskDockerFunction("checkIntegrityComposer", requirementIdentifier, false, "cd ${PWD}; ./Build/Scripts/checkIntegrityComposer.php $*") +
+            "\n" +
+            "checkIntegrityComposer"
+        );
+
         // Exception code checker, xlf, permissions, rst file check
         return new Job("Integration various", new BambooKey("CDECC"))
             .description("Checks duplicate exceptions, git submodules, xlf files, permissions, rst")
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
-            .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
-                new ScriptTask()
-                    .description("Run duplicate exception code check script")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "./Build/Scripts/duplicateExceptionCodeCheck.sh\n"
-                    ),
-                new ScriptTask()
-                    .description("Run git submodule status and verify there are none")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "if [[ `git submodule status 2>&1 | wc -l` -ne 0 ]]; then\n" +
-                        "    echo \\\"Found a submodule definition in repository\\\";\n" +
-                        "    exit 99;\n" +
-                        "fi\n"
-                    ),
-                new ScriptTask()
-                    .description("Run permission check script")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "./Build/Scripts/checkFilePermissions.sh\n"
-                    ),
-                new ScriptTask()
-                    .description("Run xlf check")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "./Build/Scripts/xlfcheck.sh"
-                    ),
-                new ScriptTask()
-                    .description("Run rst check")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function validateRstFiles() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/Scripts/validateRstFiles.php $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "validateRstFiles"
-                    ),
-                new ScriptTask()
-                    .description("Run path length check")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "./Build/Scripts/maxFilePathLength.sh"
-                    ),
-                new ScriptTask()
-                    .description("Run extension scanner ReST file reference tester")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function extensionScannerRstFileReferences() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/Scripts/extensionScannerRstFileReferences.php $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "extensionScannerRstFileReferences"
-                    ),
-                new ScriptTask()
-                    .description("Run functional fixture csv format checker")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function checkIntegrityCsvFixtures() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/Scripts/checkIntegrityCsvFixtures.php $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "checkIntegrityCsvFixtures"
-                    ),
-                new ScriptTask()
-                    .description("Run composer.json integrity check")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function checkIntegrityComposer() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/Scripts/checkIntegrityComposer.php $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "checkIntegrityComposer"
-                    )
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+            .tasks(this.getTasksStopSupersededBuilds())
+            .tasks(this.getTasksRunChecks(requirementIdentifier, "Integration various", checks))
+            .finalTasks(
+                this.getTaskStopToolbox()
             )
+            .finalTasks(this.getTasksParseChecksReport())
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -797,7 +1073,167 @@ abstract public class AbstractCoreSpec {
     }
 
     /**
-     * Job for javascript unit tests
+     * Task stopping running builds of older patch sets of the same gerrit change, or
+     * this build if a newer patch set is already running, if enabled. Uses the change
+     * and patch set labels of the builds and the stopPlanRun credentials.
+     *
+     * Runs in a main stage job that has workspace and docker for bambooTool anyways.
+     * The labels are applied by the build labels job of the preparation stage, so each
+     * build reaching the main stage has them. An older build still in preparation is
+     * not found, it stops itself once it reaches its main stage.
+     */
+    protected Task[] getTasksStopSupersededBuilds() {
+        if (!this.useStopSupersededBuilds) {
+            return new Task[0];
+        }
+        String resultsFile = "Build/bamboo/target/superseded/results.xml";
+        return new Task[] {
+            new ScriptTask()
+                .description("Stop superseded builds")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("supersede") +
+                    this.getScriptTaskBambooTool() +
+                    "CHANGEURL=${bamboo.changeUrl}\n" +
+                    "PATCHSET=${bamboo.patchset}\n" +
+                    "\n" +
+                    "if [[ ! $CHANGEURL ]]; then\n" +
+                    "    exit 0\n" +
+                    "fi\n" +
+                    "\n" +
+                    "function bambooRest() {\n" +
+                    "    { set +x; } 2>/dev/null\n" +
+                    "    curl -sf -u \"${bamboo_stopPlanRunUser}:${bamboo_stopPlanRunPassword}\" \"$@\"\n" +
+                    "    local result=$?\n" +
+                    "    set -x\n" +
+                    "    return ${result}\n" +
+                    "}\n" +
+                    "\n" +
+                    "mkdir -p $(dirname " + resultsFile + ")\n" +
+                    "bambooRest -H 'Accept: application/xml' \\\n" +
+                    "    \"" + bambooServerName + "/rest/api/latest/result/${bamboo_planKey}?includeAllStates=true&expand=results.result.labels&max-results=100\" \\\n" +
+                    "    > " + resultsFile + " || exit 0\n" +
+                    "for RESULT_KEY in $(bambooTool SupersededBuilds " + resultsFile + " ${bamboo_planKey}-${bamboo_buildNumber} ${CHANGEURL} ${PATCHSET}); do\n" +
+                    "    echo \"Stopping superseded build ${RESULT_KEY}\"\n" +
+                    "    bambooRest -X DELETE " + bambooServerName + "/rest/api/latest/queue/${RESULT_KEY} >/dev/null || echo \"Stopping ${RESULT_KEY} failed\"\n" +
+                    "done\n"
+                )
+        };
+    }
+
+    /**
+     * Tasks running independent checks, one task per check. If enabled, the checks
+     * run concurrently in one task instead, with log and status captured per check
+     * and a junit report with a test per check.
+     *
+     * @param String requirementIdentifier
+     * @param String name Test suite name of the junit report
+     * @param LinkedHashMap<String, String> checks Bash lines by description
+     */
+    protected Task[] getTasksRunChecks(String requirementIdentifier, String name, LinkedHashMap<String, String> checks) {
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        if (!this.useParallelChecks()) {
+            for (Map.Entry<String, String> check : checks.entrySet()) {
+                tasks.add(new ScriptTask()
+                    .description(check.getKey())
+                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                    .inlineBody(
+                        this.getScriptTaskBashInlineBody() +
+                        check.getValue()
+                    )
+                );
+            }
+            return tasks.toArray(new Task[tasks.size()]);
+        }
+
+        String functions = "";
+        String descriptions = "";
+        int number = 0;
+        for (Map.Entry<String, String> check : checks.entrySet()) {
+            number++;
+            functions +=
+                "function check" + number + "() {\n" +
+                "    " + check.getValue().trim().replace("\n", "\n    ") + "\n" +
+                "}\n" +
+                "\n";
+            descriptions += "    \"" + check.getKey() + "\"\n";
+        }
+        tasks.add(new ScriptTask()
+            .description("Run checks in parallel")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody() +
+                functions +
+                "DESCRIPTIONS=(\n" +
+                "    \"\"\n" +
+                descriptions +
+                ")\n" +
+                "CHECKS=" + this.checksPath + "\n" +
+                "rm -rf ${CHECKS}\n" +
+                "mkdir -p ${CHECKS} test-reports\n" +
+                "\n" +
+                "function runCheck() {\n" +
+                "    local start=$(date +%s)\n" +
+                "    ( check$1 ) > ${CHECKS}/$1.log 2>&1\n" +
+                "    echo \"$? $(($(date +%s) - start))\" > ${CHECKS}/$1.status\n" +
+                "}\n" +
+                "\n" +
+                "# Started once up front, the checks only docker exec into it\n" +
+                this.getScriptTaskToolboxFunction(requirementIdentifier) +
+                "ensureToolbox || exit 1\n" +
+                "\n" +
+                "for CHECK in $(seq 1 " + number + "); do\n" +
+                "    while [ $(jobs -rp | wc -l) -ge " + this.checksParallelism + " ]; do\n" +
+                "        wait -n\n" +
+                "    done\n" +
+                "    runCheck ${CHECK} &\n" +
+                "done\n" +
+                "wait\n" +
+                "\n" +
+                "{ set +x; } 2>/dev/null\n" +
+                "RESULT=0\n" +
+                "TESTCASES=\"\"\n" +
+                "for CHECK in $(seq 1 " + number + "); do\n" +
+                "    read EXIT DURATION < ${CHECKS}/${CHECK}.status\n" +
+                "    echo \"==== ${DESCRIPTIONS[${CHECK}]}: exit code ${EXIT} after ${DURATION}s\"\n" +
+                "    cat ${CHECKS}/${CHECK}.log\n" +
+                "    TESTCASES=\"${TESTCASES}<testcase name=\\\"${DESCRIPTIONS[${CHECK}]}\\\" classname=\\\"Checks\\\" time=\\\"${DURATION}\\\">\"\n" +
+                "    if [ ${EXIT} -ne 0 ]; then\n" +
+                "        RESULT=1\n" +
+                "        TESTCASES=\"${TESTCASES}<failure message=\\\"exit code ${EXIT}, see build log\\\"/>\"\n" +
+                "    fi\n" +
+                "    TESTCASES=\"${TESTCASES}</testcase>\"\n" +
+                "done\n" +
+                "echo \"<?xml version=\\\"1.0\\\" encoding=\\\"UTF-8\\\"?><testsuites><testsuite name=\\\"" + name + "\\\" tests=\\\"" + number + "\\\">${TESTCASES}</testsuite></testsuites>\" > test-reports/checks.xml\n" +
+                "exit ${RESULT}\n"
+            )
+        );
+        return tasks.toArray(new Task[tasks.size()]);
+    }
+
+    /**
+     * Parse the junit report of parallel checks, if enabled
+     */
+    protected Task[] getTasksParseChecksReport() {
+        if (!this.useParallelChecks()) {
+            return new Task[0];
+        }
+        return new Task[] {
+            new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
+                .resultDirectories("test-reports/checks.xml")
+        };
+    }
+
+    /**
+     * Checks run in parallel if enabled and docker functions use the toolbox,
+     * a docker run per call has a fixed container name
+     */
+    protected boolean useParallelChecks() {
+        return this.checksParallelism > 1 && this.useToolboxContainer;
+    }
+
+    /**
+     * Job for javascript unit tests
      *
      * @param String requirementIdentifier
      */
@@ -805,50 +1241,26 @@ abstract public class AbstractCoreSpec {
         return new Job("Unit JavaScript", new BambooKey("JSUT"))
             .description("Run JavaScript unit tests")
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+            .tasks(this.getTasksSkipUnaffectedJob("javascript", "typo3temp/var/tests/skipped.xml"))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
-                new ScriptTask()
-                    .description("yarn install in Build/ dir")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function yarn() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e HOME=${HOME} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}/Build; yarn $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "yarn install"
-                    ),
+                this.getTaskYarnInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Run tests")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function karma() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e HOME=${HOME} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/node_modules/karma/bin/karma $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction(
+                            "karma", requirementIdentifier, false, "cd ${PWD}; ./Build/node_modules/karma/bin/karma $*",
+                            "HOME=${HOME}"
+                        ) +
                         "\n" +
                         "karma start " + this.testingFrameworkBuildPath + "Configuration/JSUnit/karma.conf.js --single-run"
                     )
             )
             .finalTasks(
+                this.getTaskStopToolbox(),
                 new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                     .resultDirectories("typo3temp/var/tests/*")
             )
@@ -859,6 +1271,7 @@ abstract public class AbstractCoreSpec {
                     .location("Build/target/site/clover")
                     .shared(false)
             )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -872,31 +1285,36 @@ abstract public class AbstractCoreSpec {
      */
     protected Job getJobLintPhp(String requirementIdentifier) {
         return new Job("Lint " + requirementIdentifier, new BambooKey("L" + requirementIdentifier))
-            .description("Run php -l on source files for linting " + requirementIdentifier)
+            .description("Run php -l on changed source files for linting " + requirementIdentifier)
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, false))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
                 new ScriptTask()
                     .description("Run php lint")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function runLint() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e HOME=${HOME} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; find . -name \\*.php -print0 | xargs -0 -n1 -P2 php -n -c /etc/php/cli-no-xdebug/php.ini -l >/dev/null\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction(
+                            "runLint", requirementIdentifier, false, "cd ${PWD}; Build/Scripts/phpLint.sh $*",
+                            "HOME=${HOME}"
+                        ) +
+                        this.getScriptTaskBambooTool() +
                         "\n" +
-                        "runLint"
+                        "# Content hashes of files linted fine before with this php image\n" +
+                        "LINT_CACHE=" + this.agentCachePath + "php-lint/$(docker image inspect --format '{{.Id}}' typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest | sed 's/^sha256://')\n" +
+                        "mkdir -p Build/bamboo/target/php-lint\n" +
+                        "bambooTool PhpLintCache select ${LINT_CACHE} Build/bamboo/target/php-lint/files || exit 1\n" +
+                        "runLint Build/bamboo/target/php-lint/files Build/bamboo/target/php-lint/failed\n" +
+                        "RESULT=$?\n" +
+                        "bambooTool PhpLintCache update ${LINT_CACHE} Build/bamboo/target/php-lint/files Build/bamboo/target/php-lint/failed\n" +
+                        "exit ${RESULT}"
                     )
             )
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -912,80 +1330,176 @@ abstract public class AbstractCoreSpec {
         return new Job("Lint scss ts", new BambooKey("LSTS"))
             .description("Run npm lint, run npm run build-js")
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, false))
+            .tasks(this.getTasksSkipUnaffectedJob("scssts", null))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                new ScriptTask()
-                    .description("yarn install in Build/ dir")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function yarn() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e HOME=${HOME} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}/Build; yarn $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "yarn install"
-                    ),
+                this.getTaskYarnInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Run npm lint")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function npm() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e HOME=${HOME} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}/Build; npm $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction(
+                            "npm", requirementIdentifier, false, "cd ${PWD}/Build; npm $*",
+                            "HOME=${HOME}"
+                        ) +
                         "\n" +
                         "npm run lint"
-                    ),
-                new ScriptTask()
-                    .description("Run npm build-js")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "function npm() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        -e HOME=${HOME} \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}/Build; npm $*\"\n" +
-                        "}\n" +
-                        "\n" +
-                        "npm run build-js"
-                    ),
-                new ScriptTask()
-                    .description("git status to check for changed files after build-js")
-                    .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
-                    .inlineBody(
-                        this.getScriptTaskBashInlineBody() +
-                        "git status | grep -q \"nothing to commit, working tree clean\""
                     )
             )
+            .tasks(this.getTasksBuildJs(requirementIdentifier))
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
             .cleanWorkingDirectory(true);
     }
 
+    /**
+     * Job for javascript unit tests, npm lint and build-js sharing one yarn install
+     *
+     * @param String requirementIdentifier
+     */
+    protected Job getJobFrontendPipeline(String requirementIdentifier) {
+        LinkedHashMap<String, String> checks = new LinkedHashMap<String, String>();
+        checks.put(
+            "Run npm lint",
+            this.getScriptTaskDockerFunction(
+                "npm", requirementIdentifier, false, "cd ${PWD}/Build; npm $*",
+                "HOME=${HOME}"
+            ) +
+            "\n" +
+            "npm run lint"
+        );
+        checks.put(
+            "Run javascript unit tests",
+            this.getScriptTaskDockerFunction(
+                "karma", requirementIdentifier, false, "cd ${PWD}; ./Build/node_modules/karma/bin/karma $*",
+                "HOME=${HOME}"
+            ) +
+            "\n" +
+            "karma start " + this.testingFrameworkBuildPath + "Configuration/JSUnit/karma.conf.js --single-run"
+        );
+
+        // Javascript and scssts are always affected together, see ChangeImpactAnalyzer
+        return new Job("Frontend", new BambooKey("JSFE"))
+            .description("Run JavaScript unit tests, npm lint and npm run build-js")
+            .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+            .tasks(this.getTasksSkipUnaffectedJob("javascript", "typo3temp/var/tests/skipped.xml"))
+            .tasks(this.getTaskYarnInstall(requirementIdentifier))
+            .tasks(this.getTasksRunChecks(requirementIdentifier, "Frontend", checks))
+            .tasks(this.getTasksBuildJs(requirementIdentifier))
+            .finalTasks(
+                this.getTaskStopToolbox(),
+                new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
+                    .resultDirectories("typo3temp/var/tests/*")
+            )
+            .finalTasks(this.getTasksParseChecksReport())
+            .artifacts(
+                new Artifact()
+                    .name("Clover Report (System)")
+                    .copyPattern("**/*.*")
+                    .location("Build/target/site/clover")
+                    .shared(false)
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
+            .requirements(
+                this.getRequirementDocker10()
+            )
+            .cleanWorkingDirectory(true);
+    }
+
+    /**
+     * Tasks to run npm build-js and verify the committed javascript files are up to date
+     *
+     * @param String requirementIdentifier
+     */
+    protected Task[] getTasksBuildJs(String requirementIdentifier) {
+        return new Task[] {
+            this.getTaskBuildJs(requirementIdentifier),
+            new ScriptTask()
+                .description("git status to check for changed files after build-js")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody() +
+                    "git status | grep -q \"nothing to commit, working tree clean\""
+                )
+        };
+    }
+
+    /**
+     * Task to run npm build-js, or to restore its output from agent cache
+     *
+     * @param String requirementIdentifier
+     */
+    protected Task getTaskBuildJs(String requirementIdentifier) {
+        if (!this.useTypeScriptBuildCache) {
+            return new ScriptTask()
+                .description("Run npm build-js")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody() +
+                    this.getScriptTaskDockerFunction(
+                        "npm", requirementIdentifier, false, "cd ${PWD}/Build; npm $*",
+                        "HOME=${HOME}"
+                    ) +
+                    "\n" +
+                    "npm run build-js"
+                );
+        }
+
+        // The typescript version of Build/ has no incremental build, and type checks span
+        // modules, so the whole output is cached. The tslint step of build-js is skipped
+        // on a hit, all jobs running build-js run npm lint as well.
+        String cachePath = this.agentCachePath + "typescript-build/";
+        return new ScriptTask()
+            .description("Run npm build-js using agent build cache")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskDockerFunction(
+                    "npm", requirementIdentifier, false, "cd ${PWD}/Build; npm $*",
+                    "HOME=${HOME}"
+                ) +
+                "\n" +
+                "function buildCacheKey() {\n" +
+                "    (\n" +
+                "        git ls-files -s 'typo3/sysext/*/TypeScript/*' Build/types Build/Gruntfile.js Build/package.json Build/tsconfig.json Build/tslint.json Build/yarn.lock\n" +
+                "        ls -d typo3/sysext/*/Resources/Public/JavaScript\n" +
+                "        docker image inspect --format '{{.Id}}' typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest\n" +
+                "    ) | sha1sum | cut -d ' ' -f 1\n" +
+                "}\n" +
+                "\n" +
+                "function compiledFiles() {\n" +
+                "    echo Build/tsconfig.json\n" +
+                "    git ls-files 'typo3/sysext/*/Resources/Private/TypeScript/*.ts' 'typo3/sysext/*/Tests/TypeScript/*.ts' \\\n" +
+                "        | grep -v '\\.d\\.ts$' \\\n" +
+                "        | sed -e 's#/Resources/Private/TypeScript/#/Resources/Public/JavaScript/#' -e 's#/Tests/TypeScript/#/Tests/JavaScript/#' -e 's#\\.ts$#.js#'\n" +
+                "}\n" +
+                "\n" +
+                "CACHE_FILE=" + cachePath + "$(buildCacheKey).tar\n" +
+                "if [ -f ${CACHE_FILE} ] && tar -xf ${CACHE_FILE}; then\n" +
+                "    touch ${CACHE_FILE}\n" +
+                "    echo \"build-js output restored from ${CACHE_FILE}\"\n" +
+                "    exit 0\n" +
+                "fi\n" +
+                "\n" +
+                "npm run build-js || exit 1\n" +
+                "\n" +
+                "mkdir -p " + cachePath + "\n" +
+                "TMP_FILE=$(mktemp " + cachePath + "tmp.XXXXXX)\n" +
+                "compiledFiles | tar -cf ${TMP_FILE} -T - && mv ${TMP_FILE} ${CACHE_FILE} || rm -f ${TMP_FILE}\n" +
+                "ls -1t " + cachePath + "*.tar | tail -n +" + (this.typeScriptBuildCacheSize + 1) + " | xargs -r rm -f\n" +
+                "exit 0\n"
+            );
+    }
+
     /**
      * Job for unit testing PHP
      *
@@ -995,34 +1509,29 @@ abstract public class AbstractCoreSpec {
         return new Job("Unit " + requirementIdentifier, new BambooKey("UT" + requirementIdentifier))
             .description("Run unit tests " + requirementIdentifier)
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+            .tasks(this.getTasksSkipUnaffectedJob("unit", "test-reports/phpunit.xml"))
+            .tasks(this.getTasksRestoreTestResult(requirementIdentifier, "unit", this.changeImpactPath + "UnitTests.xml", false))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Run phpunit")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function phpunit() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; php -n -c /etc/php/cli-no-xdebug/php.ini bin/phpunit $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction("phpunit", requirementIdentifier, true, "cd ${PWD}; " + this.getPhpunitRuntime() + " bin/phpunit $*") +
                         "\n" +
-                        "phpunit --log-junit test-reports/phpunit.xml -c " + this.testingFrameworkBuildPath + "UnitTests.xml"
+                        this.getScriptTaskUnitTestConfiguration("UnitTests.xml") +
+                        "phpunit --log-junit test-reports/phpunit.xml -c ${UNIT_CONFIGURATION}"
                     )
             )
+            .tasks(this.getTasksStoreTestResult())
             .finalTasks(
+                this.getTaskStopToolbox(),
                 new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                     .resultDirectories("test-reports/phpunit.xml")
             )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -1038,34 +1547,29 @@ abstract public class AbstractCoreSpec {
         return new Job("Unit deprecated " + requirementIdentifier, new BambooKey("UTD" + requirementIdentifier))
             .description("Run deprecated unit tests " + requirementIdentifier)
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+            .tasks(this.getTasksSkipUnaffectedJob("unitDeprecated", "test-reports/phpunit.xml"))
+            .tasks(this.getTasksRestoreTestResult(requirementIdentifier, "unitDeprecated", this.changeImpactPath + "UnitTestsDeprecated.xml", false))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Run phpunit")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function phpunit() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; php -n -c /etc/php/cli-no-xdebug/php.ini bin/phpunit $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction("phpunit", requirementIdentifier, true, "cd ${PWD}; " + this.getPhpunitRuntime() + " bin/phpunit $*") +
                         "\n" +
-                        "phpunit --log-junit test-reports/phpunit.xml -c " + this.testingFrameworkBuildPath + "UnitTestsDeprecated.xml"
+                        this.getScriptTaskUnitTestConfiguration("UnitTestsDeprecated.xml") +
+                        "phpunit --log-junit test-reports/phpunit.xml -c ${UNIT_CONFIGURATION}"
                     )
             )
+            .tasks(this.getTasksStoreTestResult())
             .finalTasks(
+                this.getTaskStopToolbox(),
                 new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                     .resultDirectories("test-reports/phpunit.xml")
             )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -1085,34 +1589,27 @@ abstract public class AbstractCoreSpec {
             jobs.add(new Job("Unit " + requirementIdentifier + " random " + i, new BambooKey("UTR" + requirementIdentifier + i))
                 .description("Run unit tests on " + requirementIdentifier + " in random order 0" + i)
                 .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+                .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+                .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
+                .tasks(this.getTasksSkipUnaffectedJob("unit", "test-reports/phpunit.xml"))
                 .tasks(
-                    this.getTaskGitCloneRepository(),
-                    this.getTaskGitCherryPick(),
-                    this.getTaskComposerInstall(requirementIdentifier),
                     new ScriptTask()
                         .description("Run phpunit-randomizer")
                         .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                         .inlineBody(
                             this.getScriptTaskBashInlineBody() +
-                            "function phpunitRandomizer() {\n" +
-                            "    docker run \\\n" +
-                            "        -u ${HOST_UID} \\\n" +
-                            "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                            "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                            "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                            "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
-                            "        --rm \\\n" +
-                            "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                            "        bin/bash -c \"cd ${PWD}; php -n -c /etc/php/cli-no-xdebug/php.ini bin/phpunit-randomizer $*\"\n" +
-                            "}\n" +
+                            this.getScriptTaskDockerFunction("phpunitRandomizer", requirementIdentifier, true, "cd ${PWD}; " + this.getPhpunitRuntime() + " bin/phpunit-randomizer $*") +
                             "\n" +
-                            "phpunitRandomizer --log-junit test-reports/phpunit.xml -c " + this.testingFrameworkBuildPath + "UnitTests.xml --order rand"
+                            this.getScriptTaskUnitTestConfiguration("UnitTests.xml") +
+                            "phpunitRandomizer --log-junit test-reports/phpunit.xml -c ${UNIT_CONFIGURATION} --order rand"
                         )
                 )
                 .finalTasks(
+                    this.getTaskStopToolbox(),
                     new TestParserTask(TestParserTaskProperties.TestType.JUNIT)
                         .resultDirectories("test-reports/phpunit.xml")
                 )
+                .artifacts(this.getArtifactsPhaseTimings())
                 .requirements(
                     this.getRequirementDocker10()
                 )
@@ -1123,13 +1620,482 @@ abstract public class AbstractCoreSpec {
         return jobs;
     }
 
+    /**
+     * Tasks giving a job core with the gerrit patch set applied. Either unpacks
+     * the prepared workspace, or clones, cherry picks and optionally calls composer install.
+     *
+     * @param String requirementIdentifier
+     * @param boolean composerInstall
+     */
+    protected Task[] getTasksPrepareWorkspace(String requirementIdentifier, boolean composerInstall) {
+        return this.getTasksPrepareWorkspace(requirementIdentifier, composerInstall, null);
+    }
+
+    /**
+     * Tasks giving a job core with the gerrit patch set applied, and typo3temp/var/tests
+     * on a tmpfs of the given size in all containers of the job if enabled.
+     *
+     * @param String requirementIdentifier
+     * @param boolean composerInstall
+     * @param String testTmpfsSize Size of the tmpfs, null for none
+     */
+    protected Task[] getTasksPrepareWorkspace(String requirementIdentifier, boolean composerInstall, String testTmpfsSize) {
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        if (this.usePreparedWorkspace) {
+            tasks.add(this.getTaskUnpackWorkspace());
+            tasks.addAll(Arrays.asList(this.getTasksTestTmpfs(testTmpfsSize)));
+        } else {
+            tasks.add(this.getTaskGitCloneRepository());
+            tasks.add(this.getTaskGitCherryPick());
+            tasks.addAll(Arrays.asList(this.getTasksTestTmpfs(testTmpfsSize)));
+            if (composerInstall) {
+                tasks.add(this.getTaskComposerInstall(requirementIdentifier));
+            }
+            tasks.addAll(Arrays.asList(this.getTasksAnalyzeChangeImpact()));
+        }
+        return tasks.toArray(new Task[tasks.size()]);
+    }
+
+    /**
+     * Task skipping remaining tasks of a job if its test suite is not affected
+     * by the change. A placeholder junit report with a skipped test is written
+     * for jobs parsing test results.
+     *
+     * @param String suite One of ChangeImpactAnalyzer suites
+     * @param String testReport Junit report file the job parses, or null
+     */
+    protected Task[] getTasksSkipUnaffectedJob(String suite, String testReport) {
+        if (!this.useChangeImpactAnalysis) {
+            return new Task[0];
+        }
+        return new Task[] {
+            new ScriptTask()
+                .description("Skip job if " + suite + " is not affected by change")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("change-impact") +
+                    "if [ -f " + this.changeImpactPath + "impact.properties ] && ! sed -n 's/^suites=//p' " + this.changeImpactPath + "impact.properties | grep -qw " + suite + "; then\n" +
+                    "    echo \"" + suite + " is not affected by change\" > " + this.skipJobPath + "\n" +
+                    (testReport == null ? "" : this.getScriptTaskSkippedTestReport(testReport, suite + " is not affected by change", "    ")) +
+                    "fi\n"
+                )
+        };
+    }
+
+    /**
+     * Task skipping the job if a job with the same input digest passed before on this
+     * agent, its junit reports are restored. The digest covers the core tree, composer
+     * files, test setup, php image, the suite and the content of the given files.
+     *
+     * @param String requirementIdentifier
+     * @param String suite Suite and database type of the job
+     * @param String inputFiles Space separated, missing files are fine
+     * @param boolean usesTestQueue Chunks pulled from the test queue are not known up front
+     */
+    protected Task[] getTasksRestoreTestResult(String requirementIdentifier, String suite, String inputFiles, boolean usesTestQueue) {
+        if (!this.useTestResultCache) {
+            return new Task[0];
+        }
+        String cachePath = this.agentCachePath + "test-results/";
+        return new Task[] {
+            new ScriptTask()
+                .description("Skip job if " + suite + " passed with same inputs")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("result-cache") +
+                    (usesTestQueue ?
+                        "TEST_QUEUE_URL=${bamboo.testQueueUrl}\n" +
+                        "if [[ $TEST_QUEUE_URL ]]; then\n" +
+                        "    exit 0\n" +
+                        "fi\n" +
+                        "\n"
+                    : "") +
+                    "function testResultKey() {\n" +
+                    "    (\n" +
+                    "        echo \"" + suite + " " + requirementIdentifier + "\"\n" +
+                    "        git rev-parse HEAD:typo3 HEAD:composer.json HEAD:composer.lock HEAD:Build/testing-docker\n" +
+                    "        docker image inspect --format '{{.Id}}' typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest\n" +
+                    "        cat " + inputFiles + " 2>/dev/null\n" +
+                    "    ) | sha1sum | cut -d ' ' -f 1\n" +
+                    "}\n" +
+                    "\n" +
+                    "mkdir -p Build/bamboo/target\n" +
+                    "testResultKey > Build/bamboo/target/test-result-key\n" +
+                    "CACHE_FILE=" + cachePath + "$(cat Build/bamboo/target/test-result-key).tar\n" +
+                    "if [ -f ${CACHE_FILE} ] && tar -xf ${CACHE_FILE}; then\n" +
+                    "    touch ${CACHE_FILE}\n" +
+                    "    echo \"" + suite + " passed with same inputs, reports restored from ${CACHE_FILE}\" > " + this.skipJobPath + "\n" +
+                    "fi\n"
+                )
+        };
+    }
+
+    /**
+     * Task storing the junit reports of a passed job for getTasksRestoreTestResult(),
+     * runs only if all tasks before succeeded
+     */
+    protected Task[] getTasksStoreTestResult() {
+        if (!this.useTestResultCache) {
+            return new Task[0];
+        }
+        String cachePath = this.agentCachePath + "test-results/";
+        return new Task[] {
+            new ScriptTask()
+                .description("Store test reports of passed job")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("result-cache") +
+                    "if [ ! -f Build/bamboo/target/test-result-key ]; then\n" +
+                    "    exit 0\n" +
+                    "fi\n" +
+                    "mkdir -p " + cachePath + "\n" +
+                    "TMP_FILE=$(mktemp " + cachePath + "tmp.XXXXXX)\n" +
+                    "tar -cf ${TMP_FILE} test-reports/*.xml && mv ${TMP_FILE} " + cachePath + "$(cat Build/bamboo/target/test-result-key).tar || rm -f ${TMP_FILE}\n" +
+                    "ls -1t " + cachePath + "*.tar | tail -n +" + (this.testResultCacheSize + 1) + " | xargs -r rm -f\n" +
+                    "exit 0\n"
+                )
+        };
+    }
+
+    /**
+     * Task writing the test suites and extensions affected by the gerrit patch set,
+     * see ChangeImpactAnalyzer. Nothing is written without patch set, so all jobs run.
+     */
+    protected Task[] getTasksAnalyzeChangeImpact() {
+        if (!this.useChangeImpactAnalysis) {
+            return new Task[0];
+        }
+        return new Task[] {
+            new ScriptTask()
+                .description("Analyze change impact")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("change-impact") +
+                    this.getScriptTaskBambooTool() +
+                    "CHANGEURL=${bamboo.changeUrl}\n" +
+                    "\n" +
+                    "if [[ $CHANGEURL ]]; then\n" +
+                    "    mkdir -p " + this.changeImpactPath + "\n" +
+                    "    git diff --name-only HEAD~1 HEAD > " + this.changeImpactPath + "changed-files || exit 1\n" +
+                    "    bambooTool ChangeImpactAnalyzer " + this.changeImpactPath + "changed-files " + this.changeImpactPath + " " + this.testingFrameworkBuildPath + " || exit 1\n" +
+                    "fi\n"
+                )
+        };
+    }
+
+    /**
+     * Bash lines writing a junit report with a single skipped test
+     *
+     * @param String testReport
+     * @param String reason
+     * @param String indent
+     */
+    protected String getScriptTaskSkippedTestReport(String testReport, String reason, String indent) {
+        return
+            indent + "mkdir -p $(dirname " + testReport + ")\n" +
+            indent + "echo '<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuites><testsuite name=\"" + reason + "\" tests=\"1\" skipped=\"1\">" +
+                "<testcase name=\"skipped\" classname=\"Skipped\"><skipped/></testcase></testsuite></testsuites>' > " + testReport + "\n";
+    }
+
+    /**
+     * Bash lines running phpunit on the planned chunk of a functional job. If plan
+     * variable testQueueUrl is set, the job instead pulls chunks of the finer
+     * grained plan from the test queue of its job group until the queue is empty.
+     * A rerun job gets the chunks of its previous run again.
+     *
+     * With more than one worker, each worker runs its own chunk of the finer
+     * grained worker plan, or pulls from the queue as own consumer.
+     *
+     * @param String phpunitCommand
+     * @param String queueName Job key prefix of the job group
+     * @param int numberOfChunks Number of jobs of the job group
+     * @param int chunk This job
+     */
+    protected String getScriptTaskRunFunctionalChunks(String phpunitCommand, String queueName, int numberOfChunks, int chunk) {
+        int numberOfWorkers = this.getNumberOfFunctionalTestWorkers();
+        int numberOfQueueChunks = numberOfChunks * this.testQueueChunksPerJob;
+        String queueChunkPath = this.functionalChunkPath + numberOfQueueChunks + "/FunctionalTests-Job-";
+        String workerChunkPath = this.getFunctionalWorkerChunkPath(numberOfChunks);
+        return
+            this.getScriptTaskPhpunitWithRetryFunction(phpunitCommand) +
+            "# Chunks without test files happen if tests are restricted to few extensions\n" +
+            "function runChunk() {\n" +
+            "    if grep -q '<file>' $2; then\n" +
+            "        phpunitWithRetry test-reports/phpunit-$1.xml $2\n" +
+            "    fi\n" +
+            "}\n" +
+            "\n" +
+            "# The phpunit function appends PHPUNIT_WORKER to the database name\n" +
+            "function runWorker() {\n" +
+            "    local PHPUNIT_WORKER=" + (numberOfWorkers > 1 ? "_w$1" : "") + " result=0 chunk\n" +
+            "    if [[ $TEST_QUEUE_URL ]]; then\n" +
+            "        while true; do\n" +
+            "            chunk=$(curl -sf -X POST \"${QUEUE}/next?consumer=${bamboo_buildKey}-$1&session=${SESSION}\") || return 1\n" +
+            "            if [[ -z \"${chunk}\" ]]; then\n" +
+            "                break\n" +
+            "            fi\n" +
+            "            runChunk ${chunk} " + queueChunkPath + "${chunk}.xml || result=1\n" +
+            "        done\n" +
+            "    else\n" +
+            "        chunk=$((" + ((chunk - 1) * numberOfWorkers) + " + $1))\n" +
+            "        runChunk ${chunk} " + workerChunkPath + "${chunk}.xml || result=1\n" +
+            "    fi\n" +
+            "    return ${result}\n" +
+            "}\n" +
+            "\n" +
+            "TEST_QUEUE_URL=${bamboo.testQueueUrl}\n" +
+            "if [[ $TEST_QUEUE_URL ]]; then\n" +
+            "    QUEUE=${TEST_QUEUE_URL}/queues/${bamboo_planKey}-${bamboo_buildNumber}-" + queueName + "\n" +
+            "    SESSION=${bamboo_buildResultKey}-$(date +%s%N)\n" +
+            "    seq 1 " + numberOfQueueChunks + " | curl -sf -X PUT --data-binary @- ${QUEUE} >/dev/null || exit 1\n" +
+            "fi\n" +
+            "\n" +
+            "RESULT=0\n" +
+            (numberOfWorkers == 1 ?
+                "runWorker 1 || RESULT=1\n"
+            :
+                "# Started once with the tmpfs options of the job, workers only docker exec into it\n" +
+                "ensureToolbox || exit 1\n" +
+                "PIDS=\"\"\n" +
+                "for WORKER in $(seq 1 " + numberOfWorkers + "); do\n" +
+                "    runWorker ${WORKER} > >(sed -u \"s/^/[worker ${WORKER}] /\") 2>&1 &\n" +
+                "    PIDS=\"${PIDS} $!\"\n" +
+                "done\n" +
+                "for PID in ${PIDS}; do\n" +
+                "    wait ${PID} || RESULT=1\n" +
+                "done\n"
+            ) +
+            "if ! ls test-reports/*.xml >/dev/null 2>&1; then\n" +
+            this.getScriptTaskSkippedTestReport("test-reports/phpunit.xml", "No functional tests in chunk", "    ") +
+            "fi\n" +
+            "exit ${RESULT}\n";
+    }
+
+    /**
+     * Php command line for phpunit in a docker function: no xdebug, and if enabled
+     * CLI opcache with the file cache of the job. Loads opcache if the ini does not.
+     */
+    protected String getPhpunitRuntime() {
+        String php = "php -n -c /etc/php/cli-no-xdebug/php.ini";
+        if (!this.useOpcacheFileCache) {
+            return php;
+        }
+        return
+            "mkdir -p " + this.opcacheFileCachePath + "; " +
+            php +
+            " \\$(" + php + " -m | grep -q 'Zend OPcache' || echo -d zend_extension=opcache.so)" +
+            " -d opcache.enable_cli=1" +
+            " -d opcache.file_cache=${PWD}/" + this.opcacheFileCachePath;
+    }
+
+    /**
+     * Task compiling core classes and vendor into the opcache file cache of the job,
+     * so concurrent phpunit workers do not compile the same files each. A single
+     * phpunit process fills the cache with the files it loads, there is nothing to share.
+     *
+     * @param String requirementIdentifier
+     */
+    protected Task[] getTasksOpcacheWarmup(String requirementIdentifier) {
+        if (!this.useOpcacheFileCache || this.getNumberOfFunctionalTestWorkers() <= 1) {
+            return new Task[0];
+        }
+        return new Task[] {
+            new ScriptTask()
+                .description("Warm up opcache file cache")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("opcache-warmup") +
+                    this.getScriptTaskDockerFunction(
+                        "opcacheWarmup", requirementIdentifier, false, "cd ${PWD}; " + this.getPhpunitRuntime() + " $*"
+                    ) +
+                    "\n" +
+                    "mkdir -p Build/bamboo/target\n" +
+                    "cat > Build/bamboo/target/opcache-warmup.php <<'EOF'\n" +
+                    "<?php\n" +
+                    "$failed = 0;\n" +
+                    "foreach (array_merge(glob('typo3/sysext/*/Classes'), ['vendor']) as $directory) {\n" +
+                    "    foreach (new RecursiveIteratorIterator(new RecursiveDirectoryIterator($directory)) as $file) {\n" +
+                    "        if ($file->getExtension() === 'php') {\n" +
+                    "            try {\n" +
+                    "                if (!@opcache_compile_file($file->getPathname())) {\n" +
+                    "                    $failed++;\n" +
+                    "                }\n" +
+                    "            } catch (Throwable $e) {\n" +
+                    "                $failed++;\n" +
+                    "            }\n" +
+                    "        }\n" +
+                    "    }\n" +
+                    "}\n" +
+                    "echo $failed . ' scripts failed to compile' . PHP_EOL;\n" +
+                    "EOF\n" +
+                    "# A file that does not compile is reported by the tests, the warm up only counts them\n" +
+                    "opcacheWarmup Build/bamboo/target/opcache-warmup.php || echo \"Opcache warm up stopped with exit code $?\"\n" +
+                    "echo \"$(find " + this.opcacheFileCachePath + " -type f | wc -l) scripts in opcache file cache\"\n"
+                )
+        };
+    }
+
+    /**
+     * Path prefix of the phpunit configurations of the worker plan
+     *
+     * @param int numberOfChunks Number of jobs of the job group
+     */
+    protected String getFunctionalWorkerChunkPath(int numberOfChunks) {
+        return this.functionalChunkPath + (numberOfChunks * this.getNumberOfFunctionalTestWorkers()) + "/FunctionalTests-Job-";
+    }
+
+    /**
+     * Phpunit configurations the workers of a functional job run without test queue
+     *
+     * @param int numberOfChunks Number of jobs of the job group
+     * @param int chunk This job
+     */
+    protected String getFunctionalChunkFiles(int numberOfChunks, int chunk) {
+        int numberOfWorkers = this.getNumberOfFunctionalTestWorkers();
+        ArrayList<String> files = new ArrayList<String>();
+        for (int worker = 1; worker <= numberOfWorkers; worker++) {
+            files.add(this.getFunctionalWorkerChunkPath(numberOfChunks) + ((chunk - 1) * numberOfWorkers + worker) + ".xml");
+        }
+        return String.join(" ", files);
+    }
+
+    /**
+     * Number of phpunit workers per functional job, one without toolbox container
+     */
+    protected int getNumberOfFunctionalTestWorkers() {
+        return this.useToolboxContainer ? Math.max(1, this.numberOfFunctionalTestWorkers) : 1;
+    }
+
+    /**
+     * A bash function running phpunit with a junit report and configuration. Failed
+     * tests are run again with --filter while the docker siblings are still up, the
+     * retry results are merged into the report.
+     *
+     * @param String phpunitCommand
+     */
+    protected String getScriptTaskPhpunitWithRetryFunction(String phpunitCommand) {
+        if (!this.useFailedTestRetry) {
+            return
+                "function phpunitWithRetry() {\n" +
+                "    " + phpunitCommand + " --log-junit $1 -c $2\n" +
+                "}\n" +
+                "\n";
+        }
+        return
+            this.getScriptTaskBambooTool() +
+            "function phpunitWithRetry() {\n" +
+            "    local report=$1 configuration=$2\n" +
+            "    " + phpunitCommand + " --log-junit ${report} -c ${configuration} && return 0\n" +
+            "    [ -f ${report} ] || return 1\n" +
+            "    bambooTool FailedTestRetry filter ${report} ${report}.filter " + this.failedTestRetryLimit + " || return 1\n" +
+            "    [ -s ${report}.filter ] || return 1\n" +
+            "    # The filter is read in the container, the docker function would split it\n" +
+            "    " + phpunitCommand + " --log-junit ${report}.retry -c ${configuration} --filter \"\\\"\\$(cat ${report}.filter)\\\"\"\n" +
+            "    bambooTool FailedTestRetry merge ${report} ${report}.retry\n" +
+            "}\n" +
+            "\n";
+    }
+
+    /**
+     * Bash lines setting UNIT_CONFIGURATION to the phpunit configuration to use,
+     * restricted to affected extensions by change impact analysis if available
+     *
+     * @param String configurationFile Testing framework configuration file name
+     */
+    protected String getScriptTaskUnitTestConfiguration(String configurationFile) {
+        String lines = "UNIT_CONFIGURATION=" + this.testingFrameworkBuildPath + configurationFile + "\n";
+        if (this.useChangeImpactAnalysis) {
+            lines +=
+                "if [ -f " + this.changeImpactPath + configurationFile + " ]; then\n" +
+                "    UNIT_CONFIGURATION=" + this.changeImpactPath + configurationFile + "\n" +
+                "fi\n";
+        }
+        return lines;
+    }
+
+    /**
+     * Download of the prepared workspace, if enabled
+     */
+    protected ArtifactSubscription[] getArtifactSubscriptionsWorkspace() {
+        if (!this.usePreparedWorkspace) {
+            return new ArtifactSubscription[0];
+        }
+        return new ArtifactSubscription[] {
+            new ArtifactSubscription()
+                .artifact("Prepared workspace")
+                .destination(this.preparedWorkspacePath)
+        };
+    }
+
+    /**
+     * Task unpacking the downloaded workspace of the preparation stage
+     */
+    protected Task getTaskUnpackWorkspace() {
+        return new ScriptTask()
+            .description("Unpack prepared workspace")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody("unpack") +
+                (this.useGitMirror ? this.getScriptTaskGitMirrorFunction() : "") +
+                "tar -xzf " + this.preparedWorkspacePath + "workspace.tar.gz || exit 1\n" +
+                "rm " + this.preparedWorkspacePath + "workspace.tar.gz\n" +
+                (this.useGitMirror ?
+                    "# The workspace git objects are in the mirror of the agent that packed it\n" +
+                    "if [ -f .git/objects/info/alternates ]; then\n" +
+                    "    refreshGitMirror || exit 1\n" +
+                    "fi\n"
+                : "")
+            );
+    }
+
     /**
      * Task definition for basic core clone of linked default repository
      */
     protected Task getTaskGitCloneRepository() {
-        return new VcsCheckoutTask()
-            .description("Checkout git core")
-            .checkoutItems(new CheckoutItem().defaultRepository());
+        if (!this.useGitMirror) {
+            return new VcsCheckoutTask()
+                .description("Checkout git core")
+                .checkoutItems(new CheckoutItem().defaultRepository());
+        }
+        return new ScriptTask()
+            .description("Checkout git core from agent mirror")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody("clone") +
+                this.getScriptTaskGitMirrorFunction() +
+                "refreshGitMirror || exit 1\n" +
+                "git init -q .\n" +
+                "echo " + this.gitMirrorPath + "/objects > .git/objects/info/alternates\n" +
+                "if [ -f " + this.gitMirrorPath + "/shallow ]; then\n" +
+                "    cp " + this.gitMirrorPath + "/shallow .git/shallow\n" +
+                "fi\n" +
+                "git remote add origin ${bamboo.planRepository.repositoryUrl}\n" +
+                "git checkout -q -f -B ${bamboo.planRepository.branchName} ${bamboo.planRepository.revision} || exit 1\n"
+            );
+    }
+
+    /**
+     * A bash function making sure the agent git mirror contains the plan revision.
+     * Jobs of one agent share the mirror, so access is serialized with a lock.
+     */
+    protected String getScriptTaskGitMirrorFunction() {
+        String depth = this.gitMirrorDepth > 0 ? " --depth " + this.gitMirrorDepth : "";
+        return
+            "function refreshGitMirror() {\n" +
+            "    mkdir -p $(dirname " + this.gitMirrorPath + ")\n" +
+            "    (\n" +
+            "        flock 9\n" +
+            "        if [ ! -d " + this.gitMirrorPath + " ]; then\n" +
+            "            git clone -q --mirror" + depth + " ${bamboo.planRepository.repositoryUrl} " + this.gitMirrorPath + " || exit 1\n" +
+            "            # Working copies borrow objects from the mirror, they must never be pruned\n" +
+            "            git --git-dir=" + this.gitMirrorPath + " config gc.auto 0\n" +
+            "        fi\n" +
+            "        if ! git --git-dir=" + this.gitMirrorPath + " cat-file -e ${bamboo.planRepository.revision}^{commit} 2>/dev/null; then\n" +
+            "            git --git-dir=" + this.gitMirrorPath + " fetch -q" + depth + " origin || exit 1\n" +
+            "        fi\n" +
+            "    ) 9>" + this.gitMirrorPath + ".lock\n" +
+            "}\n" +
+            "\n";
     }
 
     /**
@@ -1140,7 +2106,7 @@ abstract public class AbstractCoreSpec {
             .description("Gerrit cherry pick")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("cherry-pick") +
                 "CHANGEURL=${bamboo.changeUrl}\n" +
                 "CHANGEURLID=${CHANGEURL#https://review.typo3.org/}\n" +
                 "PATCHSET=${bamboo.patchset}\n" +
@@ -1157,17 +2123,105 @@ abstract public class AbstractCoreSpec {
      * @param String requirementIdentifier
      */
     protected Task getTaskComposerInstall(String requirementIdentifier) {
+        if (!this.useComposerVendorCache) {
+            return new ScriptTask()
+                .description("composer install")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("composer-install") +
+                    this.getScriptTaskComposer(requirementIdentifier) +
+                    "composer install -n"
+                )
+                .environmentVariables(this.composerRootVersionEnvironment);
+        }
+
+        // Restored files are hard links into the cache, vendor/ must never be changed in place
+        String cachePath = this.agentCachePath + "composer-vendor/";
         return new ScriptTask()
-            .description("composer install")
+            .description("composer install using agent vendor cache")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("composer-install") +
                 this.getScriptTaskComposer(requirementIdentifier) +
-                "composer install -n"
+                "function vendorCacheKey() {\n" +
+                "    (\n" +
+                "        cat composer.json composer.lock\n" +
+                "        docker image inspect --format '{{.Id}}' typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest\n" +
+                "    ) | sha1sum | cut -d ' ' -f 1\n" +
+                "}\n" +
+                "\n" +
+                "CACHE_DIR=" + cachePath + "$(vendorCacheKey)\n" +
+                "if [ -d ${CACHE_DIR} ] && cp -al ${CACHE_DIR}/vendor ${CACHE_DIR}/bin .; then\n" +
+                "    touch ${CACHE_DIR}\n" +
+                "    echo \"vendor restored from ${CACHE_DIR}\"\n" +
+                "    exit 0\n" +
+                "fi\n" +
+                "\n" +
+                "rm -rf vendor bin\n" +
+                "composer install -n || exit 1\n" +
+                "\n" +
+                "# Key again, the image may have been pulled by composer install\n" +
+                "CACHE_DIR=" + cachePath + "$(vendorCacheKey)\n" +
+                "mkdir -p " + cachePath + "\n" +
+                "TMP_DIR=$(mktemp -d " + cachePath + "tmp.XXXXXX)\n" +
+                "cp -al vendor bin ${TMP_DIR}/ && mv -T ${TMP_DIR} ${CACHE_DIR} 2>/dev/null || rm -rf ${TMP_DIR}\n" +
+                "ls -1dt " + cachePath + "*/ | grep -v '/tmp\\.' | tail -n +" + (this.composerVendorCacheSize + 1) + " | xargs -r rm -rf\n" +
+                "exit 0\n"
             )
             .environmentVariables(this.composerRootVersionEnvironment);
     }
 
+    /**
+     * Task definition to execute yarn install in Build/
+     *
+     * @param String requirementIdentifier
+     */
+    protected Task getTaskYarnInstall(String requirementIdentifier) {
+        if (!this.useYarnOfflineMirror) {
+            return new ScriptTask()
+                .description("yarn install in Build/ dir")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("yarn-install") +
+                    this.getScriptTaskDockerFunction(
+                        "yarn", requirementIdentifier, false, "cd ${PWD}/Build; yarn $*",
+                        "HOME=${HOME}"
+                    ) +
+                    "\n" +
+                    "yarn install"
+                );
+        }
+
+        // A mirror is moved in place complete, installs from it need no registry
+        String cachePath = this.agentCachePath + "yarn-mirror/";
+        return new ScriptTask()
+            .description("yarn install in Build/ dir using agent offline mirror")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody("yarn-install") +
+                this.getScriptTaskDockerFunction(
+                    "yarn", requirementIdentifier, false, "cd ${PWD}/Build; yarn $*",
+                    "HOME=${HOME}",
+                    "YARN_YARN_OFFLINE_MIRROR=${YARN_MIRROR}"
+                ) +
+                "\n" +
+                "MIRROR_DIR=" + cachePath + "$(sha1sum Build/yarn.lock | cut -d ' ' -f 1)\n" +
+                "if [ -d ${MIRROR_DIR} ]; then\n" +
+                "    touch ${MIRROR_DIR}\n" +
+                "    YARN_MIRROR=${MIRROR_DIR}\n" +
+                "    yarn install --offline --frozen-lockfile && exit 0\n" +
+                "    echo \"yarn install from ${MIRROR_DIR} failed, using registry\"\n" +
+                "fi\n" +
+                "\n" +
+                "mkdir -p " + cachePath + "\n" +
+                "YARN_MIRROR=$(mktemp -d " + cachePath + "tmp.XXXXXX)\n" +
+                "yarn install || { rm -rf ${YARN_MIRROR}; exit 1; }\n" +
+                "mv -T ${YARN_MIRROR} ${MIRROR_DIR} 2>/dev/null || rm -rf ${YARN_MIRROR}\n" +
+                "ls -1dt " + cachePath + "*/ | grep -v '/tmp\\.' | tail -n +" + (this.yarnOfflineMirrorCacheSize + 1) + " | xargs -r rm -rf\n" +
+                "exit 0\n"
+            );
+    }
+
     /**
      * Task to prepare an acceptance test
      */
@@ -1176,7 +2230,7 @@ abstract public class AbstractCoreSpec {
             .description("Prepare acceptance test environment")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "mkdir -p typo3temp/var/tests/\n"
             );
     }
@@ -1189,10 +2243,18 @@ abstract public class AbstractCoreSpec {
             .description("Start docker siblings for acceptance test install mariadb")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "cd Build/testing-docker/bamboo\n" +
                 "echo COMPOSE_PROJECT_NAME=${BAMBOO_COMPOSE_PROJECT_NAME}sib > .env\n" +
-                "docker-compose run start_dependencies_acceptance_install_mariadb10"
+                this.getScriptTaskDatabaseTmpfs() +
+                (this.useDatabasePool ?
+                    this.getScriptTaskDatabaseSnapshot("mariadb10") +
+                    this.getScriptTaskDatabasePoolFunctions() +
+                    "leaseDatabase mariadb10 || exit 1\n" +
+                    "docker-compose up -d chrome web"
+                :
+                    "docker-compose run start_dependencies_acceptance_install_mariadb10"
+                )
             );
     }
 
@@ -1204,10 +2266,18 @@ abstract public class AbstractCoreSpec {
             .description("Start docker siblings for acceptance test install postgres")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "cd Build/testing-docker/bamboo\n" +
                 "echo COMPOSE_PROJECT_NAME=${BAMBOO_COMPOSE_PROJECT_NAME}sib > .env\n" +
-                "docker-compose run start_dependencies_acceptance_install_postgres10"
+                this.getScriptTaskDatabaseTmpfs() +
+                (this.useDatabasePool ?
+                    this.getScriptTaskDatabaseSnapshot("postgres10") +
+                    this.getScriptTaskDatabasePoolFunctions() +
+                    "leaseDatabase postgres10 || exit 1\n" +
+                    "docker-compose up -d chrome web"
+                :
+                    "docker-compose run start_dependencies_acceptance_install_postgres10"
+                )
             );
     }
 
@@ -1219,7 +2289,7 @@ abstract public class AbstractCoreSpec {
             .description("Start docker siblings for acceptance test install sqlite")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "cd Build/testing-docker/bamboo\n" +
                 "echo COMPOSE_PROJECT_NAME=${BAMBOO_COMPOSE_PROJECT_NAME}sib > .env\n" +
                 "docker-compose run start_dependencies_acceptance_install_sqlite"
@@ -1234,10 +2304,18 @@ abstract public class AbstractCoreSpec {
             .description("Start docker siblings for functional tests on mariadb")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "cd Build/testing-docker/bamboo\n" +
                 "echo COMPOSE_PROJECT_NAME=${BAMBOO_COMPOSE_PROJECT_NAME}sib > .env\n" +
-                "docker-compose run start_dependencies_functional_mariadb10"
+                this.getScriptTaskDatabaseTmpfs() +
+                this.getScriptTaskDatabaseSnapshot("mariadb10") +
+                (this.useDatabasePool ?
+                    this.getScriptTaskDatabasePoolFunctions() +
+                    "leaseDatabase mariadb10 || exit 1\n" +
+                    "docker-compose up -d redis4 memcached1-5"
+                :
+                    "docker-compose run start_dependencies_functional_mariadb10"
+                )
             );
     }
 
@@ -1249,10 +2327,18 @@ abstract public class AbstractCoreSpec {
             .description("Start docker siblings for functional tests on postgres10")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "cd Build/testing-docker/bamboo\n" +
                 "echo COMPOSE_PROJECT_NAME=${BAMBOO_COMPOSE_PROJECT_NAME}sib > .env\n" +
-                "docker-compose run start_dependencies_functional_postgres10"
+                this.getScriptTaskDatabaseTmpfs() +
+                this.getScriptTaskDatabaseSnapshot("postgres10") +
+                (this.useDatabasePool ?
+                    this.getScriptTaskDatabasePoolFunctions() +
+                    "leaseDatabase postgres10 || exit 1\n" +
+                    "docker-compose up -d redis4 memcached1-5"
+                :
+                    "docker-compose run start_dependencies_functional_postgres10"
+                )
             );
     }
 
@@ -1264,13 +2350,221 @@ abstract public class AbstractCoreSpec {
             .description("Start docker siblings for functional tests on sqlite")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("docker-start") +
                 "cd Build/testing-docker/bamboo\n" +
                 "echo COMPOSE_PROJECT_NAME=${BAMBOO_COMPOSE_PROJECT_NAME}sib > .env\n" +
                 "docker-compose run start_dependencies_functional_sqlite"
             );
     }
 
+    /**
+     * Bash line adding the size of the database data directory tmpfs to .env of docker-compose
+     */
+    protected String getScriptTaskDatabaseTmpfs() {
+        if (!this.useTmpfsStorage) {
+            return "";
+        }
+        return "echo DATABASE_TMPFS_SIZE=" + this.databaseTmpfsSize + " >> .env\n";
+    }
+
+    /**
+     * Task writing the docker options mounting typo3temp/var/tests on tmpfs, docker
+     * functions add them to the containers they start. It runs before any task of the
+     * job starts the toolbox, so the toolbox gets the mount once.
+     *
+     * @param String size Size of the tmpfs, null for none
+     */
+    protected Task[] getTasksTestTmpfs(String size) {
+        if (!this.useTmpfsStorage || size == null) {
+            return new Task[0];
+        }
+        return new Task[] {
+            new ScriptTask()
+                .description("Mount typo3temp/var/tests on tmpfs")
+                .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+                .inlineBody(
+                    this.getScriptTaskBashInlineBody("tmpfs") +
+                    "mkdir -p typo3temp/var/tests Build/bamboo/target\n" +
+                    "echo \"--tmpfs ${PWD}/typo3temp/var/tests:rw,exec,nosuid,size=" + size + ",mode=1777\" > " + this.testTmpfsPath + "\n"
+                )
+        };
+    }
+
+    /**
+     * Bash lines adding the data directory snapshot of a database service to .env of
+     * docker-compose, if enabled. Pooled containers need the same configuration in all
+     * jobs, docker-compose recreates them otherwise.
+     *
+     * @param String service mariadb10 or postgres10
+     */
+    protected String getScriptTaskDatabaseSnapshot(String service) {
+        if (!this.useDatabaseSnapshots) {
+            return "";
+        }
+        if (service.equals("mariadb10")) {
+            return
+                this.getScriptTaskDatabaseSnapshotFunction() +
+                "createDatabaseSnapshot mariadb10 mariadb:10 /var/lib/mysql \"mysqladmin ping -h 127.0.0.1 --protocol tcp --silent\" -e MYSQL_ROOT_PASSWORD=funcp\n" +
+                "echo MARIADB_SNAPSHOT=${DATABASE_SNAPSHOT} >> .env\n";
+        }
+        return
+            this.getScriptTaskDatabaseSnapshotFunction() +
+            "createDatabaseSnapshot postgres10-${HOST_USER} postgres:10 /var/lib/postgresql/data \"pg_isready -h 127.0.0.1 -q\" -e POSTGRES_PASSWORD=funcp -e POSTGRES_USER=${HOST_USER} -v /etc/passwd:/etc/passwd:ro\n" +
+            "echo POSTGRES_SNAPSHOT=${DATABASE_SNAPSHOT} >> .env\n";
+    }
+
+    /**
+     * Bash functions of the database pool. Pooled containers are the services of
+     * docker-compose project <agent>pool in the test network of the agent, so they
+     * answer to their service name like the ones of the job. A state file per service
+     * holds "leased <build>" or "idle", its modification time is the time of change.
+     *
+     * leaseDatabase <service>: Hand out a healthy server, replaced if its last lease
+     * was not returned, it idled too long or its image was updated.
+     * returnDatabases: Drop all databases of servers leased by this build, discard
+     * a server if that fails or it is unhealthy afterwards. Servers idle too long are
+     * discarded here too, every job returns, not every job leases.
+     *
+     * Needs cwd Build/testing-docker/bamboo with .env.
+     */
+    protected String getScriptTaskDatabasePoolFunctions() {
+        String poolPath = this.agentCachePath + "database-pool/";
+        return
+            "POOL_PROJECT=${BAMBOO_COMPOSE_PROJECT_NAME}pool\n" +
+            "\n" +
+            "function databaseHealthy() {\n" +
+            "    local container=${POOL_PROJECT}_$1_1\n" +
+            "    [ \"$(docker inspect -f '{{.State.Health.Status}}' ${container} 2>/dev/null)\" == \"healthy\" ] || return 1\n" +
+            "    case $1 in\n" +
+            "        mariadb10) docker exec ${container} mysqladmin ping -h 127.0.0.1 --protocol tcp --silent ;;\n" +
+            "        postgres10) docker exec ${container} pg_isready -h 127.0.0.1 -q ;;\n" +
+            "    esac\n" +
+            "}\n" +
+            "\n" +
+            "function resetDatabase() {\n" +
+            "    local container=${POOL_PROJECT}_$1_1 statements\n" +
+            "    case $1 in\n" +
+            "        mariadb10)\n" +
+            "            statements=$(docker exec ${container} mysql -uroot -pfuncp -N -e \"SELECT CONCAT('DROP DATABASE ', CHAR(96), schema_name, CHAR(96), ';') FROM information_schema.schemata WHERE schema_name NOT IN ('mysql', 'information_schema', 'performance_schema', 'sys')\") || return 1\n" +
+            "            echo \"${statements}\" | docker exec -i ${container} mysql -uroot -pfuncp\n" +
+            "            ;;\n" +
+            "        postgres10)\n" +
+            "            statements=$(docker exec ${container} psql -U ${HOST_USER} -d postgres -Atc \"SELECT 'DROP DATABASE \\\"' || datname || '\\\";' FROM pg_database WHERE datname NOT IN ('postgres', 'template0', 'template1', '${HOST_USER}')\") || return 1\n" +
+            "            echo \"${statements}\" | docker exec -i ${container} psql -U ${HOST_USER} -d postgres -q\n" +
+            "            ;;\n" +
+            "    esac\n" +
+            "}\n" +
+            "\n" +
+            "function discardDatabase() {\n" +
+            "    docker rm -f -v ${POOL_PROJECT}_$1_1 >/dev/null 2>&1\n" +
+            "    rm -f " + poolPath + "${POOL_PROJECT}_$1\n" +
+            "}\n" +
+            "\n" +
+            "function leaseDatabase() {\n" +
+            "    local service=$1 container=${POOL_PROJECT}_$1_1 state=" + poolPath + "${POOL_PROJECT}_$1\n" +
+            "    mkdir -p " + poolPath + "\n" +
+            "    if docker inspect ${container} >/dev/null 2>&1; then\n" +
+            "        local image=$(docker inspect -f '{{.Config.Image}}' ${container})\n" +
+            "        if ! grep -q '^idle' ${state} 2>/dev/null; then\n" +
+            "            echo \"Discarding pooled ${service}, last lease was not returned: $(cat ${state} 2>/dev/null)\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        elif [ $(( $(date +%s) - $(stat -c %Y ${state}) )) -gt " + this.databasePoolIdleTimeout + " ]; then\n" +
+            "            echo \"Discarding pooled ${service}, idle too long\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        elif [ \"$(docker inspect -f '{{.Image}}' ${container})\" != \"$(docker image inspect -f '{{.Id}}' ${image} 2>/dev/null)\" ]; then\n" +
+            "            echo \"Discarding pooled ${service}, image ${image} was updated\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        elif ! databaseHealthy ${service}; then\n" +
+            "            echo \"Discarding pooled ${service}, unhealthy\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        fi\n" +
+            "    fi\n" +
+            "    echo \"leased ${bamboo_buildResultKey}\" > ${state}\n" +
+            "    docker-compose -p ${POOL_PROJECT} up -d ${service} || return 1\n" +
+            "    for i in $(seq 120); do\n" +
+            "        databaseHealthy ${service} && return 0\n" +
+            "        sleep 1\n" +
+            "    done\n" +
+            "    echo \"Pooled ${service} did not get healthy\"\n" +
+            "    return 1\n" +
+            "}\n" +
+            "\n" +
+            "function returnDatabases() {\n" +
+            "    local state service\n" +
+            "    for state in $(grep -lx \"leased ${bamboo_buildResultKey}\" " + poolPath + "${POOL_PROJECT}_* 2>/dev/null); do\n" +
+            "        service=${state##*/${POOL_PROJECT}_}\n" +
+            "        if resetDatabase ${service} && databaseHealthy ${service}; then\n" +
+            "            echo idle > ${state}\n" +
+            "        else\n" +
+            "            echo \"Discarding pooled ${service}, reset failed\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        fi\n" +
+            "    done\n" +
+            "    for service in mariadb10 postgres10; do\n" +
+            "        state=" + poolPath + "${POOL_PROJECT}_${service}\n" +
+            "        docker inspect ${POOL_PROJECT}_${service}_1 >/dev/null 2>&1 || continue\n" +
+            "        if [ ! -f ${state} ]; then\n" +
+            "            echo \"Discarding pooled ${service}, it has no state\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        elif grep -q '^idle' ${state} && [ $(( $(date +%s) - $(stat -c %Y ${state}) )) -gt " + this.databasePoolIdleTimeout + " ]; then\n" +
+            "            echo \"Discarding pooled ${service}, idle too long\"\n" +
+            "            discardDatabase ${service}\n" +
+            "        fi\n" +
+            "    done\n" +
+            "}\n" +
+            "\n";
+    }
+
+    /**
+     * A bash function creating a snapshot of an initialized database data directory
+     * once per agent and image, and setting DATABASE_SNAPSHOT to its path. The
+     * variable stays empty if no snapshot is available, the server initializes then.
+     *
+     * Arguments: name, image, data directory, readiness probe, docker run options
+     */
+    protected String getScriptTaskDatabaseSnapshotFunction() {
+        String snapshotPath = this.agentCachePath + "database-snapshots/";
+        return
+            "function createDatabaseSnapshot() {\n" +
+            "    local name=$1 image=$2 dataDirectory=$3 probe=$4\n" +
+            "    shift 4\n" +
+            "    local container=${BAMBOO_COMPOSE_PROJECT_NAME}sib_snapshot\n" +
+            "    DATABASE_SNAPSHOT=\"\"\n" +
+            "    # Image not pulled yet: docker-compose pulls it, next job creates the snapshot\n" +
+            "    local imageId=$(docker image inspect --format '{{.Id}}' ${image} 2>/dev/null | sed 's/^sha256://')\n" +
+            "    [ -n \"${imageId}\" ] || return 0\n" +
+            "    local snapshot=" + snapshotPath + "${name}-${imageId}.tar.gz\n" +
+            "    mkdir -p " + snapshotPath + "\n" +
+            "    (\n" +
+            "        flock 9\n" +
+            "        [ -f ${snapshot} ] && exit 0\n" +
+            "        docker rm -f -v ${container} >/dev/null 2>&1\n" +
+            "        docker run -d --name ${container} -v ${dataDirectory} \"$@\" ${image} >/dev/null || exit 1\n" +
+            "        local ready=0\n" +
+            "        for i in $(seq 120); do\n" +
+            "            if docker exec ${container} ${probe}; then\n" +
+            "                ready=1\n" +
+            "                break\n" +
+            "            fi\n" +
+            "            sleep 1\n" +
+            "        done\n" +
+            "        if [ ${ready} -eq 0 ]; then\n" +
+            "            docker rm -f -v ${container} >/dev/null\n" +
+            "            exit 0\n" +
+            "        fi\n" +
+            "        # A clean shutdown leaves a consistent data directory\n" +
+            "        docker stop -t 60 ${container} >/dev/null\n" +
+            "        docker run --rm --volumes-from ${container} -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ alpine:3.8 \\\n" +
+            "            /bin/sh -c \"tar -czf ${snapshot}.tmp -C ${dataDirectory} . && chmod 644 ${snapshot}.tmp && mv ${snapshot}.tmp ${snapshot}\"\n" +
+            "        docker rm -f -v ${container} >/dev/null\n" +
+            "    ) 9>" + snapshotPath + "${name}.lock\n" +
+            "    if [ -f ${snapshot} ]; then\n" +
+            "        DATABASE_SNAPSHOT=${snapshot}\n" +
+            "    fi\n" +
+            "}\n" +
+            "\n";
+    }
+
     /**
      * Stop started docker containers
      */
@@ -1279,9 +2573,26 @@ abstract public class AbstractCoreSpec {
             .description("Stop docker siblings")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
+                this.getScriptTaskBashInlineBody("teardown") +
                 "cd Build/testing-docker/bamboo\n" +
-                "docker-compose down -v"
+                "docker-compose down -v\n" +
+                (this.useDatabasePool ?
+                    this.getScriptTaskDatabasePoolFunctions() +
+                    "returnDatabases\n"
+                : "")
+            );
+    }
+
+    /**
+     * Remove the php toolbox container of this job
+     */
+    protected Task getTaskStopToolbox() {
+        return new ScriptTask()
+            .description("Stop toolbox container")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody("teardown") +
+                "docker rm -f ${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox >/dev/null 2>&1 || true\n"
             );
     }
 
@@ -1296,22 +2607,85 @@ abstract public class AbstractCoreSpec {
             .description("Create list of test files to execute per job")
             .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
             .inlineBody(
-                this.getScriptTaskBashInlineBody() +
-                "function splitFunctionalTests() {\n" +
-                "    docker run \\\n" +
-                "        -u ${HOST_UID} \\\n" +
-                "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                "        --rm \\\n" +
-                "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                "        bin/bash -c \"cd ${PWD}; ./" + this.testingFrameworkBuildPath + "Scripts/splitFunctionalTests.php $*\"\n" +
-                "}\n" +
+                this.getScriptTaskBashInlineBody("plan") +
+                this.getScriptTaskDockerFunction("splitFunctionalTests", requirementIdentifier, false, "cd ${PWD}; ./" + this.testingFrameworkBuildPath + "Scripts/splitFunctionalTests.php $*") +
                 "\n" +
                 "splitFunctionalTests " + numberOfJobs + " -v"
             );
     }
 
+    /**
+     * Collect the junit reports of a functional chunk job in one file, published by
+     * getArtifactFunctionalTestDurations() for the chunk planning of the next plan run
+     */
+    protected Task getTaskStoreFunctionalTestDurations() {
+        return new ScriptTask()
+            .description("Store functional test durations")
+            .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
+            .inlineBody(
+                this.getScriptTaskBashInlineBody("teardown") +
+                "if ls test-reports/*.xml >/dev/null 2>&1; then\n" +
+                "    mkdir -p " + this.functionalDurationsPath + "\n" +
+                "    {\n" +
+                "        echo \"<testsuites>\"\n" +
+                "        sed 's/<?xml[^>]*>//' test-reports/*.xml\n" +
+                "        echo \"</testsuites>\"\n" +
+                "    } > " + this.functionalDurationsPath + "durations.xml\n" +
+                "fi\n"
+            );
+    }
+
+    /**
+     * Durations of a functional chunk job, downloaded by the split job of the next plan run
+     */
+    protected Artifact getArtifactFunctionalTestDurations() {
+        return new Artifact()
+            .name("Functional durations")
+            .copyPattern("durations.xml")
+            .location(this.functionalDurationsPath)
+            .shared(false);
+    }
+
+    /**
+     * Job keys of a group of functional chunk jobs
+     *
+     * @param String prefix FMY, FPG or FSL
+     * @param String requirementIdentifier
+     * @param int numberOfChunks
+     */
+    protected List<String> getFunctionalJobKeys(String prefix, String requirementIdentifier, int numberOfChunks) {
+        List<String> jobKeys = new ArrayList<String>();
+        for (int i=1; i<=numberOfChunks; i++) {
+            jobKeys.add(prefix + requirementIdentifier + (i < 10 ? "0" : "") + i);
+        }
+        return jobKeys;
+    }
+
+    /**
+     * Functional chunk configurations planned by the split job
+     */
+    protected ArtifactSubscription getArtifactSubscriptionFunctionalChunks() {
+        return new ArtifactSubscription()
+            .artifact("Functional chunks")
+            .destination(this.functionalChunkPath);
+    }
+
+    /**
+     * Phase timings of the job, if enabled
+     */
+    protected Artifact[] getArtifactsPhaseTimings() {
+        if (!this.usePhaseTimings) {
+            return new Artifact[0];
+        }
+        return new Artifact[] {
+            new Artifact()
+                .name("Phase timings")
+                .copyPattern("*.jsonl")
+                .location(this.phaseTimingPath)
+                .shared(false)
+        };
+    }
+
     /**
      * Requirement for docker 1.0 set by bamboo-agents
      */
@@ -1322,9 +2696,18 @@ abstract public class AbstractCoreSpec {
     }
 
     /**
-     * A bash header for script tasks forking a bash if needed
+     * A bash header for script tasks forking a bash if needed, timed as phase "test"
      */
     protected String getScriptTaskBashInlineBody() {
+        return this.getScriptTaskBashInlineBody("test");
+    }
+
+    /**
+     * A bash header for script tasks forking a bash if needed
+     *
+     * @param String phase Name the task is timed with, the function phase switches to another one
+     */
+    protected String getScriptTaskBashInlineBody(String phase) {
         return
             "#!/bin/bash\n" +
             "\n" +
@@ -1333,10 +2716,164 @@ abstract public class AbstractCoreSpec {
             "    exit \"$?\"\n" +
             "fi\n" +
             "\n" +
+            (this.useChangeImpactAnalysis || this.useTestResultCache ?
+                "if [ -f " + this.skipJobPath + " ]; then\n" +
+                "    echo \"Skipped: $(cat " + this.skipJobPath + ")\"\n" +
+                "    exit 0\n" +
+                "fi\n" +
+                "\n"
+            : "") +
+            (this.usePhaseTimings ? this.getScriptTaskPhaseTimingFunctions() + "phase " + phase + "\n\n" : "") +
             "set -x\n" +
             "\n";
     }
 
+    /**
+     * Bash functions appending a json line per phase of a script task to the
+     * timing file of the job. The last phase ends with the script.
+     */
+    protected String getScriptTaskPhaseTimingFunctions() {
+        return
+            "PHASE_TIMINGS=${PWD}/" + this.phaseTimingPath + "${bamboo_buildKey}.jsonl\n" +
+            "PHASE=\"\"\n" +
+            "function phaseEnd() {\n" +
+            "    [ -n \"${PHASE}\" ] || return 0\n" +
+            "    mkdir -p $(dirname ${PHASE_TIMINGS})\n" +
+            "    echo \"{\\\"plan\\\":\\\"${bamboo_planKey}-${bamboo_buildNumber}\\\",\\\"job\\\":\\\"${bamboo_buildKey}\\\",\\\"agent\\\":\\\"$(hostname)\\\",\" \\\n" +
+            "        \"\\\"phase\\\":\\\"${PHASE}\\\",\\\"start\\\":${PHASE_START},\\\"end\\\":$(date +%s%3N),\\\"exit\\\":$1}\" >> ${PHASE_TIMINGS}\n" +
+            "    PHASE=\"\"\n" +
+            "}\n" +
+            "function phase() {\n" +
+            "    phaseEnd 0\n" +
+            "    PHASE=$1\n" +
+            "    PHASE_START=$(date +%s%3N)\n" +
+            "}\n" +
+            "trap 'phaseEnd $?' EXIT\n";
+    }
+
+    /**
+     * A bash function stopping the running plan, if speculative main stage is enabled
+     */
+    protected String getScriptTaskStopPlanRunFunction() {
+        if (!this.useSpeculativeMainStage) {
+            return "";
+        }
+        return
+            "function stopPlanRun() {\n" +
+            "    { set +x; } 2>/dev/null\n" +
+            "    echo \"$1, stopping plan run ${bamboo_planKey}-${bamboo_buildNumber}\"\n" +
+            "    curl -sf -u \"${bamboo_stopPlanRunUser}:${bamboo_stopPlanRunPassword}\" -X DELETE \\\n" +
+            "        " + bambooServerName + "/rest/api/latest/queue/${bamboo_planKey}-${bamboo_buildNumber} >/dev/null \\\n" +
+            "        || echo \"Stopping plan run failed\"\n" +
+            "    exit 1\n" +
+            "}\n" +
+            "\n";
+    }
+
+    /**
+     * End of a command line calling stopPlanRun if the command fails
+     *
+     * @param String reason
+     */
+    protected String getScriptTaskStopPlanRunOnFailure(String reason) {
+        if (!this.useSpeculativeMainStage) {
+            return "\n";
+        }
+        return " || stopPlanRun \"" + reason + "\"\n";
+    }
+
+    /**
+     * A bash function executing a command in the php image of the job.
+     *
+     * Either a docker run per call, or a docker exec in the toolbox container
+     * which is started on first use by ensureToolbox and removed by getTaskStopToolbox().
+     * Toolbox functions may be called concurrently, docker run ones may not.
+     *
+     * @param String functionName
+     * @param String requirementIdentifier
+     * @param boolean network Attach to the network of the docker siblings
+     * @param String command Command line for bash -c, $* are the function arguments.
+     *                       Options in testTmpfsPath are added to a started container.
+     * @param String... environment Variables passed into the container, "name=value"
+     */
+    protected String getScriptTaskDockerFunction(String functionName, String requirementIdentifier, boolean network, String command, String... environment) {
+        String environmentOptions = "";
+        for (String variable : environment) {
+            environmentOptions += "        -e " + variable + " \\\n";
+        }
+
+        if (!this.useToolboxContainer) {
+            return
+                "function " + functionName + "() {\n" +
+                "    docker run \\\n" +
+                "        -u ${HOST_UID} \\\n" +
+                "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
+                "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
+                "        $(cat " + this.testTmpfsPath + " 2>/dev/null) \\\n" +
+                environmentOptions +
+                "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
+                (network ? "        --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" : "") +
+                "        --rm \\\n" +
+                "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
+                "        bin/bash -c \"" + command + "\"\n" +
+                "}\n";
+        }
+
+        return
+            this.getScriptTaskToolboxFunction(requirementIdentifier) +
+            "function " + functionName + "() {\n" +
+            "    ensureToolbox || return 1\n" +
+            "    docker exec \\\n" +
+            "        -u ${HOST_UID} \\\n" +
+            environmentOptions +
+            "        ${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox \\\n" +
+            "        bin/bash -c \"" + command + "\"\n" +
+            "}\n";
+    }
+
+    /**
+     * A bash function ensureToolbox starting the toolbox container of the job if it
+     * does not run, and returning once it runs. The toolbox is always in the siblings
+     * network. An exited toolbox is replaced. Inspect, remove and start are serialized
+     * by a lock per agent, concurrent callers share one container.
+     *
+     * @param String requirementIdentifier
+     */
+    protected String getScriptTaskToolboxFunction(String requirementIdentifier) {
+        return
+            "function ensureToolbox() {\n" +
+            "    (\n" +
+            "        flock 8\n" +
+            "        toolboxRunning=$(docker inspect -f '{{.State.Running}}' ${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox 2>/dev/null)\n" +
+            "        if [ \"${toolboxRunning}\" == \"true\" ]; then\n" +
+            "            exit 0\n" +
+            "        fi\n" +
+            "        if [ \"${toolboxRunning}\" == \"false\" ]; then\n" +
+            "            docker rm -f ${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox >/dev/null\n" +
+            "        fi\n" +
+            "        docker run \\\n" +
+            "            -d \\\n" +
+            "            -u ${HOST_UID} \\\n" +
+            "            -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
+            "            -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
+            "            $(cat " + this.testTmpfsPath + " 2>/dev/null) \\\n" +
+            "            --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox \\\n" +
+            "            --network ${BAMBOO_COMPOSE_PROJECT_NAME}_test \\\n" +
+            "            typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
+            "            tail -f /dev/null >/dev/null || exit 1\n" +
+            "        for i in $(seq 30); do\n" +
+            "            if [ \"$(docker inspect -f '{{.State.Running}}' ${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox 2>/dev/null)\" == \"true\" ]; then\n" +
+            "                exit 0\n" +
+            "            fi\n" +
+            "            sleep 1\n" +
+            "        done\n" +
+            "        echo \"Toolbox container did not start\"\n" +
+            "        exit 1\n" +
+            "    ) 8>/tmp/${BAMBOO_COMPOSE_PROJECT_NAME}sib_toolbox.lock\n" +
+            "}\n" +
+            "\n";
+    }
+
     /**
      * A bash function aliasing 'composer' as docker command
      *
@@ -1344,17 +2881,39 @@ abstract public class AbstractCoreSpec {
      */
     protected String getScriptTaskComposer(String requirementIdentifier) {
         return
-            "function composer() {\n" +
-            "    docker run \\\n" +
-            "        -u ${HOST_UID} \\\n" +
-            "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-            "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-            "        -e COMPOSER_ROOT_VERSION=${COMPOSER_ROOT_VERSION} \\\n" +
-            "        -e HOME=${HOME} \\\n" +
-            "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-            "        --rm \\\n" +
-            "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-            "        bin/bash -c \"cd ${PWD}; composer $*\"\n" +
+            this.getScriptTaskDockerFunction(
+                "composer", requirementIdentifier, false, "cd ${PWD}; composer $*",
+                "COMPOSER_ROOT_VERSION=${COMPOSER_ROOT_VERSION}",
+                "HOME=${HOME}"
+            ) +
+            "\n";
+    }
+
+    /**
+     * A bash function executing a java class of core.tools, first argument is the
+     * class name. The tools are compiled by the first call of a job and again only
+     * if a source changed. Calls of parallel workers are serialized, they share
+     * container name and class files.
+     */
+    protected String getScriptTaskBambooTool() {
+        return
+            "function bambooTool() {\n" +
+            "    mkdir -p Build/bamboo/target\n" +
+            "    (\n" +
+            "        flock 9\n" +
+            "        local compile=\"\"\n" +
+            "        if [ ! -f Build/bamboo/target/tools/.compiled ] || [ -n \"$(find Build/bamboo/src/main/java/core/tools -name '*.java' -newer Build/bamboo/target/tools/.compiled)\" ]; then\n" +
+            "            compile=\"mkdir -p Build/bamboo/target/tools && javac -d Build/bamboo/target/tools Build/bamboo/src/main/java/core/tools/*.java && touch Build/bamboo/target/tools/.compiled && \"\n" +
+            "        fi\n" +
+            "        docker run \\\n" +
+            "            -u ${HOST_UID} \\\n" +
+            "            -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
+            "            -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
+            "            --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
+            "            --rm \\\n" +
+            "            openjdk:8-jdk-alpine \\\n" +
+            "            /bin/sh -c \"cd ${PWD}; ${compile}java -cp Build/bamboo/target/tools core.tools.$*\"\n" +
+            "    ) 9>Build/bamboo/target/tools.lock\n" +
             "}\n" +
             "\n";
     }
@@ -0,0 +1,126 @@
+package core;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+/**
+ * Number of chunk jobs per test suite derived from a simple capacity model:
+ * A chunk job takes its share of the serial suite duration plus a fixed
+ * overhead, all chunk jobs of a plan run should fit on the agent pool at
+ * once, and no chunk job should take longer than the target time.
+ *
+ * Chunks are added one by one to the suite with the currently slowest chunk
+ * job, until all chunk jobs meet the target or the agent pool is used up.
+ */
+public class ChunkSizing {
+
+    protected int agents;
+
+    protected int targetSeconds;
+
+    protected int jobOverheadSeconds;
+
+    /**
+     * Serial duration per suite
+     */
+    protected Map<String, Double> suiteSeconds = new LinkedHashMap<String, Double>();
+
+    public ChunkSizing(int agents, int targetSeconds, int jobOverheadSeconds, Map<String, Double> suiteSeconds) {
+        this.agents = agents;
+        this.targetSeconds = targetSeconds;
+        this.jobOverheadSeconds = jobOverheadSeconds;
+        this.suiteSeconds.putAll(suiteSeconds);
+    }
+
+    /**
+     * Sizing of a plan from chunk-sizing.properties
+     *
+     * @param String planKey
+     */
+    public static ChunkSizing load(String planKey) {
+        Properties properties = new Properties();
+        try (InputStream stream = ChunkSizing.class.getResourceAsStream("/chunk-sizing.properties")) {
+            properties.load(stream);
+        } catch (Exception e) {
+            throw new RuntimeException("Can not read chunk-sizing.properties", e);
+        }
+        Map<String, Double> suiteSeconds = new LinkedHashMap<String, Double>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith("duration.")) {
+                suiteSeconds.put(name.substring("duration.".length()), Double.parseDouble(properties.getProperty(name)));
+            }
+        }
+        return new ChunkSizing(
+            Integer.parseInt(properties.getProperty(planKey + ".agents")),
+            Integer.parseInt(properties.getProperty(planKey + ".targetSeconds")),
+            Integer.parseInt(properties.getProperty("jobOverheadSeconds")),
+            suiteSeconds
+        );
+    }
+
+    /**
+     * Number of chunk jobs for all suites, at least one each
+     */
+    public Map<String, Integer> getNumbersOfChunks() {
+        Map<String, Integer> numbersOfChunks = new LinkedHashMap<String, Integer>();
+        PriorityQueue<String> slowestSuite = new PriorityQueue<String>(
+            Comparator.comparingDouble((String suite) -> this.getChunkSeconds(suite, numbersOfChunks.get(suite))).reversed()
+                .thenComparing(Comparator.naturalOrder())
+        );
+        for (String suite : this.suiteSeconds.keySet()) {
+            numbersOfChunks.put(suite, 1);
+            slowestSuite.add(suite);
+        }
+        int jobs = numbersOfChunks.size();
+        while (jobs < this.agents && !slowestSuite.isEmpty()) {
+            String suite = slowestSuite.poll();
+            if (this.getChunkSeconds(suite, numbersOfChunks.get(suite)) <= this.targetSeconds) {
+                break;
+            }
+            numbersOfChunks.put(suite, numbersOfChunks.get(suite) + 1);
+            slowestSuite.add(suite);
+            jobs++;
+        }
+        return numbersOfChunks;
+    }
+
+    /**
+     * Number of chunk jobs of given suite
+     *
+     * @param String suite
+     */
+    public int getNumberOfChunks(String suite) {
+        Integer numberOfChunks = this.getNumbersOfChunks().get(suite);
+        if (numberOfChunks == null) {
+            throw new IllegalArgumentException("No duration for suite " + suite + " in chunk sizing");
+        }
+        return numberOfChunks;
+    }
+
+    /**
+     * Estimated wall clock time of one chunk job
+     *
+     * @param String suite
+     * @param int numberOfChunks
+     */
+    public double getChunkSeconds(String suite, int numberOfChunks) {
+        return this.suiteSeconds.get(suite) / numberOfChunks + this.jobOverheadSeconds;
+    }
+}
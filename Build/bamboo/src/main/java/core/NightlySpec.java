@@ -38,13 +38,37 @@ public class NightlySpec extends AbstractCoreSpec {
     protected static String planName = "Core master nightly";
     protected static String planKey = "GTN";
 
-    protected int numberOfAcceptanceTestJobs = 8;
-    protected int numberOfFunctionalMysqlJobs = 6;
+    protected int numberOfAcceptanceTestJobs;
+    protected int numberOfFunctionalMysqlJobs;
     protected int numberOfFunctionalMssqlJobs = 6;
-    protected int numberOfFunctionalPgsqlJobs = 6;
-    protected int numberOfFunctionalSqliteJobs = 10;
+    protected int numberOfFunctionalPgsqlJobs;
+    protected int numberOfFunctionalSqliteJobs;
     protected int numberOfUnitRandomOrderJobs = 4;
 
+    /**
+     * Chunk job counts are derived from the capacity model
+     */
+    public NightlySpec() {
+        this.useComposerVendorCache = true;
+        this.usePreparedWorkspace = true;
+        this.useToolboxContainer = true;
+        this.useGitMirror = true;
+        this.useDatabaseSnapshots = true;
+        this.usePhaseTimings = true;
+        this.useFailedTestRetry = true;
+        this.useYarnOfflineMirror = true;
+        this.useFrontendPipeline = true;
+        this.useTypeScriptBuildCache = true;
+        this.useOpcacheFileCache = true;
+        this.useDatabaseFixtureSnapshots = true;
+        this.useTmpfsStorage = true;
+        ChunkSizing chunkSizing = ChunkSizing.load(planKey);
+        this.numberOfAcceptanceTestJobs = chunkSizing.getNumberOfChunks("acceptance");
+        this.numberOfFunctionalMysqlJobs = chunkSizing.getNumberOfChunks("functional.mysql");
+        this.numberOfFunctionalPgsqlJobs = chunkSizing.getNumberOfChunks("functional.pgsql");
+        this.numberOfFunctionalSqliteJobs = chunkSizing.getNumberOfChunks("functional.sqlite");
+    }
+
     /**
      * Run main to publish plan on Bamboo
      */
@@ -66,6 +90,20 @@ public class NightlySpec extends AbstractCoreSpec {
      * Returns full Plan definition
      */
     Plan createPlan() {
+        // PREPARATION stage
+        ArrayList<Job> jobsPreparationStage = new ArrayList<Job>();
+        if (this.usePreparedWorkspace) {
+            jobsPreparationStage.add(this.getJobPrepareWorkspace("PHP72"));
+        }
+        jobsPreparationStage.add(this.getJobSplitFunctionalTests(
+            "PHP72",
+            this.numberOfFunctionalMysqlJobs,
+            this.numberOfFunctionalPgsqlJobs,
+            this.numberOfFunctionalSqliteJobs
+        ));
+        Stage stagePreparation = new Stage("Preparation")
+            .jobs(jobsPreparationStage.toArray(new Job[jobsPreparationStage.size()]));
+
         // MAIN stage
         ArrayList<Job> jobsMainStage = new ArrayList<Job>();
 
@@ -88,12 +126,15 @@ public class NightlySpec extends AbstractCoreSpec {
         jobsMainStage.addAll(this.getJobsFunctionalTestsPgsql(this.numberOfFunctionalPgsqlJobs, "PHP72"));
         jobsMainStage.addAll(this.getJobsFunctionalTestsSqlite(this.numberOfFunctionalSqliteJobs, "PHP72"));
 
-        jobsMainStage.add(this.getJobUnitJavaScript("PHP72"));
+        if (this.useFrontendPipeline) {
+            jobsMainStage.add(this.getJobFrontendPipeline("PHP72"));
+        } else {
+            jobsMainStage.add(this.getJobUnitJavaScript("PHP72"));
+            jobsMainStage.add(this.getJobLintScssTs("PHP72"));
+        }
 
         jobsMainStage.add(this.getJobLintPhp("PHP72"));
 
-        jobsMainStage.add(this.getJobLintScssTs("PHP72"));
-
         jobsMainStage.add(this.getJobUnitPhp("PHP72"));
         jobsMainStage.add(this.getJobUnitDeprecatedPhp("PHP72"));
         jobsMainStage.addAll(this.getJobUnitPhpRandom(this.numberOfUnitRandomOrderJobs, "PHP72"));
@@ -107,6 +148,7 @@ public class NightlySpec extends AbstractCoreSpec {
             .description("Execute TYPO3 core master nightly tests. Auto generated! See Build/bamboo of core git repository.")
             .pluginConfigurations(this.getDefaultPlanPluginConfiguration())
             .stages(
+                stagePreparation,
                 stageMainStage
             )
             .linkedRepositories("git.typo3.org Core")
@@ -119,7 +161,8 @@ public class NightlySpec extends AbstractCoreSpec {
             )
             .variables(
                 new Variable("changeUrl", ""),
-                new Variable("patchset", "")
+                new Variable("patchset", ""),
+                new Variable("testQueueUrl", this.testQueueUrl)
             )
             .planBranchManagement(
                 new PlanBranchManagement()
@@ -137,30 +180,24 @@ public class NightlySpec extends AbstractCoreSpec {
         return new Job("Integration CGL", new BambooKey("CGLCHECK"))
             .description("Check coding guidelines of full core")
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Execute cgl check")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function phpCsFixer() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; php -n -c /etc/php/cli-no-xdebug/php.ini bin/php-cs-fixer $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction("phpCsFixer", requirementIdentifier, false, "cd ${PWD}; php -n -c /etc/php/cli-no-xdebug/php.ini bin/php-cs-fixer $*") +
                         "\n" +
                         "phpCsFixer fix -v --dry-run --path-mode intersection --config=Build/.php_cs typo3/\n" +
                         "exit $?"
                     )
             )
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
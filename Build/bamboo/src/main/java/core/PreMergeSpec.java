@@ -37,6 +37,8 @@ import com.atlassian.bamboo.specs.model.task.ScriptTaskProperties;
 import com.atlassian.bamboo.specs.util.BambooServer;
 import com.atlassian.bamboo.specs.util.MapBuilder;
 
+import core.tools.SupersededBuilds;
+
 /**
  * Core master pre-merge test plan.
  */
@@ -46,13 +48,41 @@ public class PreMergeSpec extends AbstractCoreSpec {
     protected static String planName = "Core master pre-merge";
     protected static String planKey = "GTC";
 
-    protected int numberOfAcceptanceTestJobs = 8;
-    protected int numberOfFunctionalMysqlJobs = 10;
+    protected int numberOfAcceptanceTestJobs;
+    protected int numberOfFunctionalMysqlJobs;
     protected int numberOfFunctionalMssqlJobs = 10;
-    protected int numberOfFunctionalPgsqlJobs = 10;
-    protected int numberOfFunctionalSqliteJobs = 10;
+    protected int numberOfFunctionalPgsqlJobs;
+    protected int numberOfFunctionalSqliteJobs;
     protected int numberOfUnitRandomOrderJobs = 2;
 
+    /**
+     * Pre-merge runs only test what a patch set affects and did not pass before,
+     * chunk job counts are derived from the capacity model
+     */
+    public PreMergeSpec() {
+        this.useChangeImpactAnalysis = true;
+        this.useTestResultCache = true;
+        this.useStopSupersededBuilds = true;
+        this.useComposerVendorCache = true;
+        this.usePreparedWorkspace = true;
+        this.useToolboxContainer = true;
+        this.useGitMirror = true;
+        this.useDatabaseSnapshots = true;
+        this.usePhaseTimings = true;
+        this.useFailedTestRetry = true;
+        this.useYarnOfflineMirror = true;
+        this.useFrontendPipeline = true;
+        this.useTypeScriptBuildCache = true;
+        this.useOpcacheFileCache = true;
+        this.useDatabaseFixtureSnapshots = true;
+        this.useTmpfsStorage = true;
+        ChunkSizing chunkSizing = ChunkSizing.load(planKey);
+        this.numberOfAcceptanceTestJobs = chunkSizing.getNumberOfChunks("acceptance");
+        this.numberOfFunctionalMysqlJobs = chunkSizing.getNumberOfChunks("functional.mysql");
+        this.numberOfFunctionalPgsqlJobs = chunkSizing.getNumberOfChunks("functional.pgsql");
+        this.numberOfFunctionalSqliteJobs = chunkSizing.getNumberOfChunks("functional.sqlite");
+    }
+
     /**
      * Run main to publish plan on Bamboo
      */
@@ -76,7 +106,16 @@ public class PreMergeSpec extends AbstractCoreSpec {
     Plan createPlan() {
         // PREPARATION stage
         ArrayList<Job> jobsPreparationStage = new ArrayList<Job>();
+        if (this.usePreparedWorkspace) {
+            jobsPreparationStage.add(this.getJobPrepareWorkspace("PHP72"));
+        }
         jobsPreparationStage.add(this.getJobBuildLabels());
+        jobsPreparationStage.add(this.getJobSplitFunctionalTests(
+            "PHP72",
+            this.numberOfFunctionalMysqlJobs,
+            this.numberOfFunctionalPgsqlJobs,
+            this.numberOfFunctionalSqliteJobs
+        ));
         Stage stagePreparation = new Stage("Preparation")
             .jobs(jobsPreparationStage.toArray(new Job[jobsPreparationStage.size()]));
 
@@ -90,6 +129,10 @@ public class PreMergeSpec extends AbstractCoreSpec {
         // MAIN stage
         ArrayList<Job> jobsMainStage = new ArrayList<Job>();
 
+        if (this.useSpeculativeMainStage) {
+            jobsMainStage.addAll(jobsEarlyStage);
+        }
+
         jobsMainStage.add(this.getJobAcceptanceTestInstallMysql("PHP72"));
         jobsMainStage.add(this.getJobAcceptanceTestInstallPgsql("PHP72"));
         jobsMainStage.add(this.getJobAcceptanceTestInstallSqlite("PHP72"));
@@ -105,12 +148,15 @@ public class PreMergeSpec extends AbstractCoreSpec {
         jobsMainStage.addAll(this.getJobsFunctionalTestsPgsql(this.numberOfFunctionalPgsqlJobs, "PHP72"));
         jobsMainStage.addAll(this.getJobsFunctionalTestsSqlite(this.numberOfFunctionalSqliteJobs, "PHP72"));
 
-        jobsMainStage.add(this.getJobUnitJavaScript("PHP72"));
+        if (this.useFrontendPipeline) {
+            jobsMainStage.add(this.getJobFrontendPipeline("PHP72"));
+        } else {
+            jobsMainStage.add(this.getJobUnitJavaScript("PHP72"));
+            jobsMainStage.add(this.getJobLintScssTs("PHP72"));
+        }
 
         jobsMainStage.add(this.getJobLintPhp("PHP72"));
 
-        jobsMainStage.add(this.getJobLintScssTs("PHP72"));
-
         jobsMainStage.add(this.getJobUnitPhp("PHP72"));
         jobsMainStage.add(this.getJobUnitDeprecatedPhp("PHP72"));
         jobsMainStage.addAll(this.getJobUnitPhpRandom(this.numberOfUnitRandomOrderJobs, "PHP72"));
@@ -118,15 +164,18 @@ public class PreMergeSpec extends AbstractCoreSpec {
         Stage stageMainStage = new Stage("Main stage")
             .jobs(jobsMainStage.toArray(new Job[jobsMainStage.size()]));
 
+        ArrayList<Stage> stages = new ArrayList<Stage>();
+        stages.add(stagePreparation);
+        if (!this.useSpeculativeMainStage) {
+            stages.add(stageEarly);
+        }
+        stages.add(stageMainStage);
+
         // Compile plan
         return new Plan(project(), planName, planKey)
             .description("Execute TYPO3 core master pre-merge tests. Auto generated! See Build/bamboo of core git repository.")
             .pluginConfigurations(this.getDefaultPlanPluginConfiguration())
-            .stages(
-                stagePreparation,
-                stageEarly,
-                stageMainStage
-            )
+            .stages(stages.toArray(new Stage[stages.size()]))
             .linkedRepositories("git.typo3.org Core")
             .triggers(
                 new RepositoryPollingTrigger()
@@ -137,7 +186,8 @@ public class PreMergeSpec extends AbstractCoreSpec {
                     .triggerIPAddresses("5.10.165.218,91.184.35.13"))
             .variables(
                 new Variable("changeUrl", ""),
-                new Variable("patchset", "")
+                new Variable("patchset", ""),
+                new Variable("testQueueUrl", this.testQueueUrl)
             )
             .planBranchManagement(
                 new PlanBranchManagement()
@@ -163,7 +213,7 @@ public class PreMergeSpec extends AbstractCoreSpec {
                     .put("repositoryDefiningWorkingDirectory", -1)
                     .put("custom", new MapBuilder()
                         .put("auto", new MapBuilder()
-                            .put("regex", "https:\\/\\/review\\.typo3\\.org\\/(#\\/c\\/)?(\\d+)")
+                            .put("regex", SupersededBuilds.changeUrlPattern)
                             .put("label", "change-\\2\\, patchset-${bamboo.patchset}")
                             .build()
                         )
@@ -200,29 +250,24 @@ public class PreMergeSpec extends AbstractCoreSpec {
         return new Job("Integration CGL", new BambooKey("CGLCHECK"))
             .description("Check coding guidelines by executing Build/Scripts/cglFixMyCommit.sh script")
             .pluginConfigurations(this.getDefaultJobPluginConfiguration())
+            .artifactSubscriptions(this.getArtifactSubscriptionsWorkspace())
+            .tasks(this.getTasksPrepareWorkspace(requirementIdentifier, true))
             .tasks(
-                this.getTaskGitCloneRepository(),
-                this.getTaskGitCherryPick(),
-                this.getTaskComposerInstall(requirementIdentifier),
                 new ScriptTask()
                     .description("Execute cgl check script")
                     .interpreter(ScriptTaskProperties.Interpreter.BINSH_OR_CMDEXE)
                     .inlineBody(
                         this.getScriptTaskBashInlineBody() +
-                        "function cglFixMyCommit() {\n" +
-                        "    docker run \\\n" +
-                        "        -u ${HOST_UID} \\\n" +
-                        "        -v /bamboo-data/${BAMBOO_COMPOSE_PROJECT_NAME}/passwd:/etc/passwd \\\n" +
-                        "        -v ${BAMBOO_COMPOSE_PROJECT_NAME}_bamboo-data:/srv/bamboo/xml-data/build-dir/ \\\n" +
-                        "        --name ${BAMBOO_COMPOSE_PROJECT_NAME}sib_adhoc \\\n" +
-                        "        --rm \\\n" +
-                        "        typo3gmbh/" + requirementIdentifier.toLowerCase() + ":latest \\\n" +
-                        "        bin/bash -c \"cd ${PWD}; ./Build/Scripts/cglFixMyCommit.sh $*\"\n" +
-                        "}\n" +
+                        this.getScriptTaskDockerFunction("cglFixMyCommit", requirementIdentifier, false, "cd ${PWD}; ./Build/Scripts/cglFixMyCommit.sh $*") +
                         "\n" +
-                        "cglFixMyCommit dryrun\n"
+                        this.getScriptTaskStopPlanRunFunction() +
+                        "cglFixMyCommit dryrun" + this.getScriptTaskStopPlanRunOnFailure("CGL check failed")
                     )
             )
+            .finalTasks(
+                this.getTaskStopToolbox()
+            )
+            .artifacts(this.getArtifactsPhaseTimings())
             .requirements(
                 this.getRequirementDocker10()
             )
@@ -0,0 +1,281 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Map files changed by a patch set to the test suites and core
+ * extensions that need to be tested.
+ *
+ * - Documentation only changes need no test suite at all
+ * - Frontend sources (TypeScript, Sass, public JavaScript and Css of an
+ *   extension, its JavaScript tests, Build/ npm setup) need the javascript,
+ *   scss/ts lint and acceptance suites. Other js, ts or css files are php
+ *   test fixtures, like TypoScript .ts files, and count as extension changes
+ * - Other changes in typo3/sysext/<extension>/ need php suites of that
+ *   extension and all extensions requiring it
+ * - Anything else, like composer.lock or Build/Scripts, runs everything
+ *
+ * Usage, from project root:
+ * ChangeImpactAnalyzer <file with changed paths> <output directory> [<testing framework build directory>]
+ *
+ * Writes <output directory>/impact.properties with space separated "suites"
+ * and "extensions", an empty extension list means all extensions. If the
+ * testing framework directory is given and extensions are restricted, unit
+ * test configurations for these extensions are written as well.
+ */
+public class ChangeImpactAnalyzer {
+
+    public static List<String> allSuites = Arrays.asList("acceptance", "functional", "javascript", "scssts", "unit", "unitDeprecated");
+
+    protected static List<String> frontendSuites = Arrays.asList("acceptance", "javascript", "scssts");
+
+    protected static List<String> phpSuites = Arrays.asList("acceptance", "functional", "unit", "unitDeprecated");
+
+    protected static Pattern extensionPath = Pattern.compile("^typo3/sysext/([^/]+)/(.*)$");
+
+    protected static Pattern frontendFile = Pattern.compile(
+        "^typo3/sysext/[^/]+/(Resources/Private/(TypeScript|Sass)|Resources/Public/(JavaScript|Css)|Tests/(JavaScript|TypeScript))/.*$"
+    );
+
+    protected static Pattern frontendBuildFile = Pattern.compile(
+        "^Build/(Resources/.*|types/.*|\\.[^/]+|Gruntfile\\.js|package\\.json|yarn\\.lock|tsconfig\\.json|tslint\\.json)$"
+    );
+
+    protected static Pattern documentationFile = Pattern.compile("(^|.*/)Documentation/.*|.*\\.(rst|md)$");
+
+    /**
+     * Suite name and the template its test directories are taken from
+     */
+    protected static Map<String, String> unitConfigurations = new HashMap<String, String>();
+    static {
+        unitConfigurations.put("unit", "UnitTests.xml");
+        unitConfigurations.put("unitDeprecated", "UnitTestsDeprecated.xml");
+    }
+
+    protected Path projectRoot;
+
+    /**
+     * Suites to run
+     */
+    protected TreeSet<String> suites = new TreeSet<String>();
+
+    /**
+     * Extensions to test, empty for all
+     */
+    protected TreeSet<String> extensions = new TreeSet<String>();
+
+    public ChangeImpactAnalyzer(Path projectRoot) {
+        this.projectRoot = projectRoot.toAbsolutePath().normalize();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ChangeImpactAnalyzer <changedFiles> <outputDirectory> [<testingFrameworkBuildDirectory>]");
+            System.exit(1);
+        }
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(Paths.get(""));
+        List<String> changedFiles = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                changedFiles.add(line.trim());
+            }
+        }
+        analyzer.analyze(changedFiles);
+
+        Path outputDirectory = Paths.get(args[1]);
+        if (args.length > 2 && !analyzer.getExtensions().isEmpty()) {
+            analyzer.writeUnitTestConfigurations(Paths.get(args[2]), outputDirectory);
+        }
+        analyzer.writeProperties(outputDirectory.resolve("impact.properties"));
+        System.out.println("Changed files: " + changedFiles.size());
+        System.out.println("Suites: " + String.join(" ", analyzer.getSuites()));
+        System.out.println("Extensions: " + (analyzer.getExtensions().isEmpty() ? "all" : String.join(" ", analyzer.getExtensions())));
+    }
+
+    /**
+     * @param List<String> changedFiles Paths relative to project root
+     */
+    public void analyze(List<String> changedFiles) throws Exception {
+        this.suites.clear();
+        this.extensions.clear();
+        boolean allExtensions = false;
+
+        for (String file : changedFiles) {
+            Matcher extensionMatcher = extensionPath.matcher(file);
+            if (documentationFile.matcher(file).matches()) {
+                continue;
+            } else if (frontendFile.matcher(file).matches() || frontendBuildFile.matcher(file).matches()) {
+                this.suites.addAll(frontendSuites);
+            } else if (extensionMatcher.matches()) {
+                this.suites.addAll(phpSuites);
+                this.extensions.add(extensionMatcher.group(1));
+            } else {
+                this.suites.addAll(allSuites);
+                allExtensions = true;
+            }
+        }
+
+        if (allExtensions) {
+            this.extensions.clear();
+            return;
+        }
+        if (this.extensions.isEmpty()) {
+            return;
+        }
+        this.extensions = this.getDependentExtensions(this.extensions);
+        if (this.extensions.size() == this.getExtensionRequirements().size()) {
+            // Everything is affected, no restriction needed
+            this.extensions.clear();
+            return;
+        }
+        if (!this.hasTestDirectory("Tests/Functional")) {
+            this.suites.remove("functional");
+        }
+    }
+
+    public TreeSet<String> getSuites() {
+        return this.suites;
+    }
+
+    public TreeSet<String> getExtensions() {
+        return this.extensions;
+    }
+
+    /**
+     * Given extensions and all extensions requiring them, directly or indirectly
+     *
+     * @param TreeSet<String> extensions
+     */
+    public TreeSet<String> getDependentExtensions(TreeSet<String> extensions) throws Exception {
+        Map<String, List<String>> requirements = this.getExtensionRequirements();
+        TreeSet<String> dependentExtensions = new TreeSet<String>(extensions);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, List<String>> extension : requirements.entrySet()) {
+                if (dependentExtensions.contains(extension.getKey())) {
+                    continue;
+                }
+                for (String requirement : extension.getValue()) {
+                    if (dependentExtensions.contains(requirement)) {
+                        dependentExtensions.add(extension.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return dependentExtensions;
+    }
+
+    /**
+     * Write unit test configurations restricted to the affected extensions.
+     * A suite without any test directory left is removed.
+     *
+     * @param Path templateDirectory Testing framework Resources/Core/Build/
+     * @param Path outputDirectory
+     */
+    public void writeUnitTestConfigurations(Path templateDirectory, Path outputDirectory) throws Exception {
+        for (Map.Entry<String, String> unitConfiguration : unitConfigurations.entrySet()) {
+            Path template = templateDirectory.resolve(unitConfiguration.getValue());
+            if (!this.suites.contains(unitConfiguration.getKey()) || !Files.exists(template)) {
+                continue;
+            }
+            PhpunitConfiguration configuration = new PhpunitConfiguration(template);
+            List<Path> directories = new ArrayList<Path>();
+            for (String directory : configuration.getTestSuiteDirectories()) {
+                for (String extension : this.extensions) {
+                    Path extensionDirectory = Paths.get(directory.replace(File.separator + "*" + File.separator, File.separator + extension + File.separator));
+                    if (!directory.equals(extensionDirectory.toString()) && Files.isDirectory(extensionDirectory)) {
+                        directories.add(extensionDirectory);
+                    }
+                }
+            }
+            if (directories.isEmpty()) {
+                this.suites.remove(unitConfiguration.getKey());
+                continue;
+            }
+            configuration.setTestSuite("Core tests", "directory", directories);
+            configuration.write(outputDirectory.resolve(unitConfiguration.getValue()));
+        }
+    }
+
+    public void writeProperties(Path file) throws Exception {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, Arrays.asList(
+            "suites=" + String.join(" ", this.suites),
+            "extensions=" + String.join(" ", this.extensions)
+        ), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Required core extensions per core extension, taken from composer.json
+     */
+    protected Map<String, List<String>> getExtensionRequirements() throws Exception {
+        Map<String, String> extensionByPackage = new HashMap<String, String>();
+        Map<String, String> composerFiles = new HashMap<String, String>();
+        File[] extensionDirectories = this.projectRoot.resolve("typo3/sysext").toFile().listFiles(File::isDirectory);
+        for (File extensionDirectory : extensionDirectories == null ? new File[0] : extensionDirectories) {
+            Path composerFile = extensionDirectory.toPath().resolve("composer.json");
+            if (!Files.exists(composerFile)) {
+                continue;
+            }
+            String composer = new String(Files.readAllBytes(composerFile), StandardCharsets.UTF_8);
+            Matcher name = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]+)\"").matcher(composer);
+            if (name.find()) {
+                extensionByPackage.put(name.group(1), extensionDirectory.getName());
+            }
+            composerFiles.put(extensionDirectory.getName(), composer);
+        }
+
+        Map<String, List<String>> requirements = new HashMap<String, List<String>>();
+        for (Map.Entry<String, String> composerFile : composerFiles.entrySet()) {
+            List<String> required = new ArrayList<String>();
+            Matcher requireSection = Pattern.compile("\"require\"\\s*:\\s*\\{([^}]*)\\}").matcher(composerFile.getValue());
+            if (requireSection.find()) {
+                Matcher packageName = Pattern.compile("\"([^\"]+)\"\\s*:").matcher(requireSection.group(1));
+                while (packageName.find()) {
+                    if (extensionByPackage.containsKey(packageName.group(1))) {
+                        required.add(extensionByPackage.get(packageName.group(1)));
+                    }
+                }
+            }
+            requirements.put(composerFile.getKey(), required);
+        }
+        return requirements;
+    }
+
+    protected boolean hasTestDirectory(String testDirectory) {
+        for (String extension : this.extensions) {
+            if (Files.isDirectory(this.projectRoot.resolve("typo3/sysext/" + extension + "/" + testDirectory))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
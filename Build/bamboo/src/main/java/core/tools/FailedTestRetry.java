@@ -0,0 +1,184 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Retry failed tests of a phpunit junit report instead of the whole job.
+ *
+ * Usage, from project root:
+ * FailedTestRetry filter <report> <filter file> <maximum>
+ *   Write a phpunit --filter pattern matching the failed test methods. The
+ *   file stays empty if nothing failed or more than maximum tests failed,
+ *   that is no flakiness but a broken build.
+ * FailedTestRetry merge <report> <retry report>
+ *   Replace failed test cases of report with their retry results. Exits
+ *   with 1 if failures remain.
+ */
+public class FailedTestRetry {
+
+    protected static String dataSetSuffix = " with data set ";
+
+    public static void main(final String[] args) throws Exception {
+        FailedTestRetry retry = new FailedTestRetry();
+        if (args.length == 4 && args[0].equals("filter")) {
+            Set<String> failedTests = retry.getFailedTests(retry.read(args[1]));
+            String filter = "";
+            if (!failedTests.isEmpty() && failedTests.size() <= Integer.parseInt(args[3])) {
+                filter = retry.createFilter(failedTests);
+                System.out.println("Retrying " + failedTests.size() + " failed tests");
+            } else if (!failedTests.isEmpty()) {
+                System.out.println(failedTests.size() + " failed tests, no retry");
+            }
+            Files.write(Paths.get(args[2]), filter.getBytes(StandardCharsets.UTF_8));
+        } else if (args.length == 3 && args[0].equals("merge")) {
+            Document report = retry.read(args[1]);
+            List<String> passed = retry.merge(report, retry.read(args[2]));
+            for (String test : passed) {
+                System.out.println("Passed on retry: " + test);
+            }
+            TransformerFactory.newInstance().newTransformer().transform(new DOMSource(report), new StreamResult(new File(args[1])));
+            System.exit(retry.getFailedTests(report).isEmpty() ? 0 : 1);
+        } else {
+            System.err.println("Usage: FailedTestRetry filter <report> <filterFile> <maximum> | merge <report> <retryReport>");
+            System.exit(1);
+        }
+    }
+
+    public Document read(String file) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(file));
+    }
+
+    /**
+     * Failed or errored test methods as Class::method, data sets stripped
+     *
+     * @param Document report
+     */
+    public Set<String> getFailedTests(Document report) {
+        Set<String> failedTests = new LinkedHashSet<String>();
+        NodeList testCases = report.getElementsByTagName("testcase");
+        for (int i = 0; i < testCases.getLength(); i++) {
+            Element testCase = (Element) testCases.item(i);
+            if (this.isFailed(testCase)) {
+                String name = testCase.getAttribute("name");
+                if (name.contains(dataSetSuffix)) {
+                    name = name.substring(0, name.indexOf(dataSetSuffix));
+                }
+                failedTests.add(testCase.getAttribute("class") + "::" + name);
+            }
+        }
+        return failedTests;
+    }
+
+    /**
+     * Regular expression for phpunit --filter, matched against Class::method plus data set
+     *
+     * @param Set<String> failedTests
+     */
+    public String createFilter(Set<String> failedTests) {
+        List<String> alternatives = new ArrayList<String>();
+        for (String test : failedTests) {
+            alternatives.add(test.replace("\\", "\\\\").replace(".", "\\."));
+        }
+        return "/^(" + String.join("|", alternatives) + ")(" + dataSetSuffix + ".*)?$/";
+    }
+
+    /**
+     * Replace test cases of report by the ones of the retry and update suite counters
+     *
+     * @param Document report
+     * @param Document retryReport
+     * @return Tests that failed in report but passed on retry
+     */
+    public List<String> merge(Document report, Document retryReport) {
+        Map<String, Element> retried = new HashMap<String, Element>();
+        NodeList retryTestCases = retryReport.getElementsByTagName("testcase");
+        for (int i = 0; i < retryTestCases.getLength(); i++) {
+            Element testCase = (Element) retryTestCases.item(i);
+            retried.put(this.getKey(testCase), testCase);
+        }
+
+        List<String> passed = new ArrayList<String>();
+        NodeList testCases = report.getElementsByTagName("testcase");
+        List<Element> failedTestCases = new ArrayList<Element>();
+        for (int i = 0; i < testCases.getLength(); i++) {
+            if (this.isFailed((Element) testCases.item(i))) {
+                failedTestCases.add((Element) testCases.item(i));
+            }
+        }
+        for (Element testCase : failedTestCases) {
+            Element retryTestCase = retried.get(this.getKey(testCase));
+            if (retryTestCase == null) {
+                continue;
+            }
+            testCase.getParentNode().replaceChild(report.importNode(retryTestCase, true), testCase);
+            if (!this.isFailed(retryTestCase)) {
+                passed.add(this.getKey(testCase));
+            }
+        }
+
+        NodeList testSuites = report.getElementsByTagName("testsuite");
+        for (int i = 0; i < testSuites.getLength(); i++) {
+            Element testSuite = (Element) testSuites.item(i);
+            int failures = 0;
+            int errors = 0;
+            NodeList suiteTestCases = testSuite.getElementsByTagName("testcase");
+            for (int j = 0; j < suiteTestCases.getLength(); j++) {
+                Element testCase = (Element) suiteTestCases.item(j);
+                failures += this.hasChild(testCase, "failure") ? 1 : 0;
+                errors += this.hasChild(testCase, "error") ? 1 : 0;
+            }
+            testSuite.setAttribute("failures", "" + failures);
+            testSuite.setAttribute("errors", "" + errors);
+        }
+        return passed;
+    }
+
+    protected String getKey(Element testCase) {
+        return testCase.getAttribute("class") + "::" + testCase.getAttribute("name");
+    }
+
+    protected boolean isFailed(Element testCase) {
+        return this.hasChild(testCase, "failure") || this.hasChild(testCase, "error");
+    }
+
+    protected boolean hasChild(Element element, String name) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && child.getNodeName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
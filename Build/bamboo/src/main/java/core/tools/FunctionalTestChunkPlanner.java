@@ -0,0 +1,331 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Split functional test files into chunks of roughly equal run time.
+ *
+ * Durations per test file are taken from junit reports of previous runs,
+ * files are then distributed longest-processing-time-first: The longest
+ * file goes to the chunk with the lowest total so far. A phpunit configuration
+ * FunctionalTests-Job-<i>.xml is written per chunk, based on the testing
+ * framework FunctionalTests.xml.
+ *
+ * Usage, from project root:
+ * FunctionalTestChunkPlanner [--extensions=<extension>,...] [--history=<file>] <template FunctionalTests.xml> <report directory> <output directory> <numberOfChunks> [<numberOfChunks> ...]
+ *
+ * Configurations are written to <output directory>/<numberOfChunks>/, so
+ * different chunk counts per database can be planned in one go. With
+ * --extensions, only tests of given core extensions are planned. With
+ * --history, durations of the history file are the base, durations of the
+ * report directory replace them, and the result is written back to the file.
+ * This way runs restricted to some extensions keep durations of other files.
+ */
+public class FunctionalTestChunkPlanner {
+
+    protected static String testRootPath = "typo3/sysext/";
+
+    protected Path projectRoot;
+
+    public FunctionalTestChunkPlanner(Path projectRoot) {
+        this.projectRoot = projectRoot.toAbsolutePath().normalize();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> extensions = new ArrayList<String>();
+        Path history = null;
+        while (args.length > 0 && args[0].startsWith("--")) {
+            if (args[0].startsWith("--extensions=")) {
+                for (String extension : args[0].substring("--extensions=".length()).split("[, ]")) {
+                    if (!extension.isEmpty()) {
+                        extensions.add(extension);
+                    }
+                }
+            } else if (args[0].startsWith("--history=")) {
+                history = Paths.get(args[0].substring("--history=".length()));
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length < 4) {
+            System.err.println("Usage: FunctionalTestChunkPlanner [--extensions=<extension>,...] [--history=<file>] <template> <reportDirectory> <outputDirectory> <numberOfChunks>...");
+            System.exit(1);
+        }
+        FunctionalTestChunkPlanner planner = new FunctionalTestChunkPlanner(Paths.get(""));
+        Path template = Paths.get(args[0]);
+        Map<String, Double> durations = planner.readDurations(Paths.get(args[1]));
+        if (history != null) {
+            Map<String, Double> historyDurations = planner.readDurations(Collections.singletonList(history));
+            historyDurations.putAll(durations);
+            historyDurations.keySet().retainAll(planner.findTestFiles());
+            planner.writeDurations(historyDurations, history);
+            durations = historyDurations;
+        }
+        List<String> testFiles = planner.findTestFiles(extensions);
+        Path outputDirectory = Paths.get(args[2]);
+
+        TreeSet<Integer> numbersOfChunks = new TreeSet<Integer>();
+        for (int i = 3; i < args.length; i++) {
+            numbersOfChunks.add(Integer.parseInt(args[i]));
+        }
+        for (int numberOfChunks : numbersOfChunks) {
+            List<List<String>> chunks = planner.plan(testFiles, durations, numberOfChunks);
+            planner.writeConfigurations(template, chunks, outputDirectory.resolve(String.valueOf(numberOfChunks)));
+            System.out.println("Planned " + testFiles.size() + " test files into " + numberOfChunks + " chunks, "
+                + durations.size() + " durations known");
+            double[] loads = planner.getChunkLoads(chunks, durations, testFiles);
+            for (int i = 0; i < chunks.size(); i++) {
+                System.out.println(String.format("  Job %d: %d files, load %.1f", i + 1, chunks.get(i).size(), loads[i]));
+            }
+        }
+    }
+
+    /**
+     * Read test file durations from all junit xml reports found in given directory.
+     *
+     * @param Path reportDirectory
+     * @return Map with test file path as key and duration in seconds as value
+     */
+    public Map<String, Double> readDurations(Path reportDirectory) throws Exception {
+        if (!Files.isDirectory(reportDirectory)) {
+            return new HashMap<String, Double>();
+        }
+        try (Stream<Path> stream = Files.list(reportDirectory)) {
+            return this.readDurations(stream
+                .filter(path -> path.toString().endsWith(".xml"))
+                .sorted()
+                .collect(Collectors.toList())
+            );
+        }
+    }
+
+    /**
+     * Read test file durations from given junit xml reports.
+     *
+     * A file run by mysql, postgres and sqlite jobs has one duration per database,
+     * they are averaged instead of the last report winning. File paths are
+     * normalized to be relative to the project root, which differs per job.
+     *
+     * @param List<Path> reports Missing files are skipped
+     * @return Map with test file path as key and duration in seconds as value
+     */
+    public Map<String, Double> readDurations(List<Path> reports) throws Exception {
+        Map<String, Double> sums = new HashMap<String, Double>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        for (Path report : reports) {
+            if (!Files.isRegularFile(report)) {
+                continue;
+            }
+            Document document;
+            try {
+                document = factory.newDocumentBuilder().parse(report.toFile());
+            } catch (Exception e) {
+                System.err.println("Skipping unreadable report " + report + ": " + e.getMessage());
+                continue;
+            }
+            NodeList testSuites = document.getElementsByTagName("testsuite");
+            for (int i = 0; i < testSuites.getLength(); i++) {
+                Element testSuite = (Element) testSuites.item(i);
+                String file = this.normalizeTestFile(testSuite.getAttribute("file"));
+                if (file == null || testSuite.getAttribute("time").isEmpty()) {
+                    continue;
+                }
+                sums.merge(file, Double.parseDouble(testSuite.getAttribute("time")), Double::sum);
+                counts.merge(file, 1, Integer::sum);
+            }
+        }
+        Map<String, Double> durations = new HashMap<String, Double>();
+        for (Map.Entry<String, Double> sum : sums.entrySet()) {
+            durations.put(sum.getKey(), sum.getValue() / counts.get(sum.getKey()));
+        }
+        return durations;
+    }
+
+    /**
+     * Write durations as junit like report, readable by readDurations()
+     *
+     * @param Map<String, Double> durations
+     * @param Path file
+     */
+    public void writeDurations(Map<String, Double> durations, Path file) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        lines.add("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        lines.add("<testsuites>");
+        for (String testFile : new TreeSet<String>(durations.keySet())) {
+            lines.add("  <testsuite file=\"" + testFile + "\" time=\"" + durations.get(testFile) + "\"/>");
+        }
+        lines.add("</testsuites>");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find all functional test files below typo3/sysext, sorted by path
+     *
+     * @return List of paths relative to project root
+     */
+    public List<String> findTestFiles() throws IOException {
+        return this.findTestFiles(Collections.<String>emptyList());
+    }
+
+    /**
+     * Find functional test files of given core extensions, sorted by path
+     *
+     * @param List<String> extensions Extension keys, empty for all
+     * @return List of paths relative to project root
+     */
+    public List<String> findTestFiles(List<String> extensions) throws IOException {
+        Path testRoot = this.projectRoot.resolve(testRootPath);
+        try (Stream<Path> stream = Files.walk(testRoot)) {
+            return stream
+                .filter(path -> path.getFileName().toString().endsWith("Test.php"))
+                .map(path -> this.projectRoot.relativize(path).toString().replace(File.separatorChar, '/'))
+                .filter(path -> path.contains("/Tests/Functional/"))
+                .filter(path -> extensions.isEmpty() || extensions.contains(path.substring(testRootPath.length()).split("/")[0]))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Distribute test files to chunks, longest processing time first
+     *
+     * Files without known duration are weighted with the average known
+     * duration. If nothing is known at all, file size is used as weight.
+     *
+     * @param List<String> testFiles
+     * @param Map<String, Double> durations
+     * @param int numberOfChunks
+     * @return List of chunks, each a sorted list of test files
+     */
+    public List<List<String>> plan(List<String> testFiles, Map<String, Double> durations, int numberOfChunks) {
+        Map<String, Double> weights = this.getWeights(testFiles, durations);
+
+        List<String> sortedFiles = new ArrayList<String>(testFiles);
+        sortedFiles.sort(Comparator.comparingDouble((String file) -> weights.get(file)).reversed()
+            .thenComparing(Comparator.naturalOrder()));
+
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        double[] loads = new double[numberOfChunks];
+        PriorityQueue<Integer> leastLoaded = new PriorityQueue<Integer>(numberOfChunks,
+            Comparator.comparingDouble((Integer chunk) -> loads[chunk]).thenComparingInt(chunk -> chunk));
+        for (int i = 0; i < numberOfChunks; i++) {
+            chunks.add(new ArrayList<String>());
+            leastLoaded.add(i);
+        }
+        for (String file : sortedFiles) {
+            int chunk = leastLoaded.poll();
+            chunks.get(chunk).add(file);
+            loads[chunk] += weights.get(file);
+            leastLoaded.add(chunk);
+        }
+        for (List<String> chunk : chunks) {
+            Collections.sort(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Estimated run time per chunk, for logging
+     */
+    public double[] getChunkLoads(List<List<String>> chunks, Map<String, Double> durations, List<String> testFiles) {
+        Map<String, Double> weights = this.getWeights(testFiles, durations);
+        double[] loads = new double[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            for (String file : chunks.get(i)) {
+                loads[i] += weights.get(file);
+            }
+        }
+        return loads;
+    }
+
+    /**
+     * Write one phpunit configuration per chunk based on given template
+     *
+     * @param Path template
+     * @param List<List<String>> chunks
+     * @param Path outputDirectory
+     */
+    public void writeConfigurations(Path template, List<List<String>> chunks, Path outputDirectory) throws Exception {
+        PhpunitConfiguration configuration = new PhpunitConfiguration(template);
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Path> files = new ArrayList<Path>();
+            for (String file : chunks.get(i)) {
+                files.add(this.projectRoot.resolve(file));
+            }
+            configuration.setTestSuite("Functional tests job " + (i + 1), "file", files);
+            configuration.write(outputDirectory.resolve("FunctionalTests-Job-" + (i + 1) + ".xml"));
+        }
+    }
+
+    /**
+     * Make a test file path from a junit report relative to project root
+     *
+     * @param String file Absolute path of the agent working directory the report was created in
+     * @return Relative path or null if file is not a core test file
+     */
+    protected String normalizeTestFile(String file) {
+        int position = file.replace('\\', '/').lastIndexOf(testRootPath);
+        if (file.isEmpty() || position < 0) {
+            return null;
+        }
+        return file.replace('\\', '/').substring(position);
+    }
+
+    protected Map<String, Double> getWeights(List<String> testFiles, Map<String, Double> durations) {
+        Map<String, Double> weights = new HashMap<String, Double>();
+        double knownSum = 0;
+        int knownCount = 0;
+        for (String file : testFiles) {
+            if (durations.containsKey(file)) {
+                knownSum += durations.get(file);
+                knownCount++;
+            }
+        }
+        for (String file : testFiles) {
+            if (durations.containsKey(file)) {
+                weights.put(file, durations.get(file));
+            } else if (knownCount > 0) {
+                weights.put(file, knownSum / knownCount);
+            } else {
+                weights.put(file, (double) this.projectRoot.resolve(file).toFile().length());
+            }
+        }
+        return weights;
+    }
+}
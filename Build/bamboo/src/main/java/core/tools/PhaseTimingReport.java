@@ -0,0 +1,192 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Roll up the phase timing files of script tasks per plan run, to see
+ * where agent minutes go: clone, composer install, docker startup, tests ...
+ *
+ * Every line of a timing file is a json object with plan, job, agent,
+ * phase, start and end in milliseconds and exit code of the phase.
+ *
+ * Usage, with the "Phase timings" artifacts of one or more plan runs downloaded:
+ * PhaseTimingReport <directory> [<directory> ...]
+ */
+public class PhaseTimingReport {
+
+    protected static Pattern jsonField = Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"([^\"]*)\"|(-?\\d+))");
+
+    /**
+     * Number of slowest jobs listed per plan run
+     */
+    protected static int numberOfListedJobs = 10;
+
+    protected static class PhaseTiming {
+        protected String plan;
+        protected String job;
+        protected String phase;
+        protected long start;
+        protected long end;
+        protected int exit;
+
+        protected long getMillis() {
+            return Math.max(0, this.end - this.start);
+        }
+    }
+
+    protected static class Summary {
+        protected int count;
+        protected int failed;
+        protected long millis;
+        protected long maximumMillis;
+
+        protected void add(PhaseTiming timing) {
+            this.count++;
+            this.failed += timing.exit == 0 ? 0 : 1;
+            this.millis += timing.getMillis();
+            this.maximumMillis = Math.max(this.maximumMillis, timing.getMillis());
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: PhaseTimingReport <directory> [<directory> ...]");
+            System.exit(1);
+        }
+        PhaseTimingReport report = new PhaseTimingReport();
+        List<PhaseTiming> timings = new ArrayList<PhaseTiming>();
+        for (String directory : args) {
+            timings.addAll(report.read(Paths.get(directory)));
+        }
+        System.out.print(report.format(timings));
+    }
+
+    /**
+     * Timings of all *.jsonl files below a directory, broken lines are ignored
+     *
+     * @param Path directory
+     */
+    public List<PhaseTiming> read(Path directory) throws IOException {
+        List<PhaseTiming> timings = new ArrayList<PhaseTiming>();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream
+                .filter(path -> path.getFileName().toString().endsWith(".jsonl") && Files.isRegularFile(path))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                PhaseTiming timing = this.parse(line);
+                if (timing != null) {
+                    timings.add(timing);
+                }
+            }
+        }
+        return timings;
+    }
+
+    /**
+     * @param String line
+     * @return Timing, or null if fields are missing
+     */
+    protected PhaseTiming parse(String line) {
+        Map<String, String> fields = new HashMap<String, String>();
+        Matcher matcher = jsonField.matcher(line);
+        while (matcher.find()) {
+            fields.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+        }
+        for (String field : new String[] {"plan", "job", "phase", "start", "end", "exit"}) {
+            if (!fields.containsKey(field)) {
+                return null;
+            }
+        }
+        PhaseTiming timing = new PhaseTiming();
+        timing.plan = fields.get("plan");
+        timing.job = fields.get("job");
+        timing.phase = fields.get("phase");
+        timing.start = Long.parseLong(fields.get("start"));
+        timing.end = Long.parseLong(fields.get("end"));
+        timing.exit = Integer.parseInt(fields.get("exit"));
+        return timing;
+    }
+
+    /**
+     * Per plan run: agent minutes and share per phase, and the slowest jobs
+     *
+     * @param List<PhaseTiming> timings
+     */
+    public String format(List<PhaseTiming> timings) {
+        Map<String, List<PhaseTiming>> plans = new TreeMap<String, List<PhaseTiming>>();
+        for (PhaseTiming timing : timings) {
+            plans.computeIfAbsent(timing.plan, plan -> new ArrayList<PhaseTiming>()).add(timing);
+        }
+
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, List<PhaseTiming>> plan : plans.entrySet()) {
+            Map<String, Summary> phases = new TreeMap<String, Summary>();
+            Map<String, Summary> jobs = new TreeMap<String, Summary>();
+            long total = 0;
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (PhaseTiming timing : plan.getValue()) {
+                phases.computeIfAbsent(timing.phase, phase -> new Summary()).add(timing);
+                jobs.computeIfAbsent(timing.job, job -> new Summary()).add(timing);
+                total += timing.getMillis();
+                first = Math.min(first, timing.start);
+                last = Math.max(last, timing.end);
+            }
+
+            report.append(String.format("Plan run %s: %d jobs, %.1f agent minutes, %.1f minutes wall clock%n",
+                plan.getKey(), jobs.size(), this.minutes(total), this.minutes(last - first)));
+            report.append(String.format("%-20s %7s %7s %9s %7s %9s%n", "phase", "tasks", "failed", "minutes", "share", "max min"));
+            List<Map.Entry<String, Summary>> sortedPhases = new ArrayList<Map.Entry<String, Summary>>(phases.entrySet());
+            sortedPhases.sort(Comparator.comparing((Map.Entry<String, Summary> entry) -> entry.getValue().millis).reversed());
+            for (Map.Entry<String, Summary> phase : sortedPhases) {
+                Summary summary = phase.getValue();
+                report.append(String.format("%-20s %7d %7d %9.1f %6.1f%% %9.1f%n",
+                    phase.getKey(), summary.count, summary.failed, this.minutes(summary.millis),
+                    total == 0 ? 0.0 : 100.0 * summary.millis / total, this.minutes(summary.maximumMillis)));
+            }
+
+            report.append(String.format("%-20s %9s%n", "slowest jobs", "minutes"));
+            jobs.entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, Summary> entry) -> entry.getValue().millis).reversed())
+                .limit(numberOfListedJobs)
+                .forEach(job -> report.append(String.format("%-20s %9.1f%n", job.getKey(), this.minutes(job.getValue().millis))));
+            report.append(String.format("%n"));
+        }
+        return report.toString();
+    }
+
+    protected double minutes(long millis) {
+        return millis / 60000.0;
+    }
+}
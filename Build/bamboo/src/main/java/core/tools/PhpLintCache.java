@@ -0,0 +1,170 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache of content hashes of php files that passed php -l, so unchanged
+ * files are not linted again. One cache file per php version is expected.
+ *
+ * Usage, from project root:
+ * PhpLintCache select <cache file> <file list>
+ *   Write php files not known to the cache to file list, one per line
+ * PhpLintCache update <cache file> <file list> <failed list>
+ *   Add files of file list that are not in failed list to the cache
+ */
+public class PhpLintCache {
+
+    protected static List<String> excludedDirectories = Arrays.asList(
+        ".git", "bin", "vendor", "typo3temp", "Build/node_modules", "Build/bamboo/target"
+    );
+
+    /**
+     * Oldest hashes are dropped if the cache grows beyond this
+     */
+    protected static int maximumEntries = 50000;
+
+    protected Path projectRoot;
+
+    public PhpLintCache(Path projectRoot) {
+        this.projectRoot = projectRoot.toAbsolutePath().normalize();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        PhpLintCache cache = new PhpLintCache(Paths.get(""));
+        if (args.length == 3 && args[0].equals("select")) {
+            List<String> files = cache.select(cache.read(Paths.get(args[1])), cache.findPhpFiles());
+            Files.write(Paths.get(args[2]), files, StandardCharsets.UTF_8);
+            System.out.println(files.size() + " php files to lint");
+        } else if (args.length == 4 && args[0].equals("update")) {
+            Path cacheFile = Paths.get(args[1]);
+            List<String> linted = Files.readAllLines(Paths.get(args[2]), StandardCharsets.UTF_8);
+            Set<String> failed = new HashSet<String>();
+            if (Files.exists(Paths.get(args[3]))) {
+                failed.addAll(Files.readAllLines(Paths.get(args[3]), StandardCharsets.UTF_8));
+            }
+            cache.write(cacheFile, cache.update(cache.read(cacheFile), linted, failed));
+        } else {
+            System.err.println("Usage: PhpLintCache select <cacheFile> <fileList> | update <cacheFile> <fileList> <failedList>");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Find php files, relative to project root and prefixed with ./
+     */
+    public List<String> findPhpFiles() throws IOException {
+        try (Stream<Path> stream = Files.walk(this.projectRoot)) {
+            return stream
+                .filter(path -> path.getFileName().toString().endsWith(".php") && Files.isRegularFile(path))
+                .map(path -> this.projectRoot.relativize(path).toString().replace(File.separatorChar, '/'))
+                .filter(path -> !this.isExcluded(path))
+                .map(path -> "./" + path)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Files whose content hash is not in the cache
+     *
+     * @param Set<String> cache
+     * @param List<String> files
+     */
+    public List<String> select(Set<String> cache, List<String> files) throws Exception {
+        List<String> selected = new ArrayList<String>();
+        for (String file : files) {
+            if (!cache.contains(this.hash(file))) {
+                selected.add(file);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Cache with hashes of successfully linted files added
+     *
+     * @param LinkedHashSet<String> cache Hashes, oldest first
+     * @param List<String> lintedFiles
+     * @param Set<String> failedFiles
+     */
+    public LinkedHashSet<String> update(LinkedHashSet<String> cache, List<String> lintedFiles, Set<String> failedFiles) throws Exception {
+        LinkedHashSet<String> updated = new LinkedHashSet<String>(cache);
+        for (String file : lintedFiles) {
+            if (!file.isEmpty() && !failedFiles.contains(file) && Files.exists(this.projectRoot.resolve(file))) {
+                updated.add(this.hash(file));
+            }
+        }
+        Iterator<String> oldest = updated.iterator();
+        while (updated.size() > maximumEntries && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+        }
+        return updated;
+    }
+
+    public LinkedHashSet<String> read(Path cacheFile) throws IOException {
+        LinkedHashSet<String> cache = new LinkedHashSet<String>();
+        if (Files.exists(cacheFile)) {
+            cache.addAll(Files.readAllLines(cacheFile, StandardCharsets.UTF_8));
+        }
+        return cache;
+    }
+
+    /**
+     * Write cache via a temporary file, so parallel jobs never see a partial cache
+     */
+    public void write(Path cacheFile, Set<String> cache) throws IOException {
+        Path directory = cacheFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, "tmp.", ".lint");
+        Files.write(temporaryFile, cache, StandardCharsets.UTF_8);
+        Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    protected String hash(String file) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(this.projectRoot.resolve(file)));
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    protected boolean isExcluded(String path) {
+        for (String directory : excludedDirectories) {
+            if (path.startsWith(directory + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,146 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A phpunit xml configuration based on a template, typically one of the
+ * testing framework, that can be written to a different directory.
+ *
+ * Relative paths of the template are made absolute on load and relative
+ * to the target directory on write, so bootstrap and test paths stay valid.
+ */
+public class PhpunitConfiguration {
+
+    protected static List<String> pathElements = Arrays.asList("directory", "file", "exclude");
+
+    protected Document document;
+
+    public PhpunitConfiguration(Path template) throws Exception {
+        this.document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(template.toFile());
+        Path templateDirectory = template.toAbsolutePath().normalize().getParent();
+        Element root = this.document.getDocumentElement();
+        if (root.hasAttribute("bootstrap")) {
+            root.setAttribute("bootstrap", this.absolute(root.getAttribute("bootstrap"), templateDirectory));
+        }
+        for (String tagName : pathElements) {
+            NodeList nodes = this.document.getElementsByTagName(tagName);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                node.setTextContent(this.absolute(node.getTextContent().trim(), templateDirectory));
+            }
+        }
+    }
+
+    /**
+     * Absolute directories of all test suites, may contain wildcards
+     */
+    public List<String> getTestSuiteDirectories() {
+        List<String> directories = new ArrayList<String>();
+        NodeList testSuites = this.document.getElementsByTagName("testsuite");
+        for (int i = 0; i < testSuites.getLength(); i++) {
+            NodeList nodes = ((Element) testSuites.item(i)).getElementsByTagName("directory");
+            for (int j = 0; j < nodes.getLength(); j++) {
+                directories.add(nodes.item(j).getTextContent());
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Replace all test suites with a single one
+     *
+     * @param String name Test suite name
+     * @param String elementName "file" or "directory"
+     * @param List<Path> paths
+     */
+    public void setTestSuite(String name, String elementName, List<Path> paths) {
+        Element testSuites = (Element) this.document.getElementsByTagName("testsuites").item(0);
+        if (testSuites == null) {
+            testSuites = this.document.createElement("testsuites");
+            this.document.getDocumentElement().appendChild(testSuites);
+        }
+        while (testSuites.hasChildNodes()) {
+            testSuites.removeChild(testSuites.getFirstChild());
+        }
+        Element testSuite = this.document.createElement("testsuite");
+        testSuite.setAttribute("name", name);
+        for (Path path : paths) {
+            Element element = this.document.createElement(elementName);
+            element.setTextContent(path.toAbsolutePath().normalize().toString());
+            testSuite.appendChild(element);
+        }
+        testSuites.appendChild(testSuite);
+    }
+
+    /**
+     * Write configuration with paths relative to the target file
+     *
+     * @param Path file
+     */
+    public void write(Path file) throws Exception {
+        Path directory = file.toAbsolutePath().normalize().getParent();
+        Files.createDirectories(directory);
+
+        Document document = (Document) this.document.cloneNode(true);
+        Element root = document.getDocumentElement();
+        if (root.hasAttribute("bootstrap")) {
+            root.setAttribute("bootstrap", this.relative(root.getAttribute("bootstrap"), directory));
+        }
+        for (String tagName : pathElements) {
+            NodeList nodes = document.getElementsByTagName(tagName);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                node.setTextContent(this.relative(node.getTextContent(), directory));
+            }
+        }
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.transform(new DOMSource(document), new StreamResult(file.toFile()));
+    }
+
+    protected String absolute(String path, Path base) {
+        if (path.isEmpty() || Paths.get(path).isAbsolute()) {
+            return path;
+        }
+        return base.resolve(path).normalize().toString();
+    }
+
+    protected String relative(String path, Path base) {
+        if (path.isEmpty() || !Paths.get(path).isAbsolute()) {
+            return path;
+        }
+        return base.relativize(Paths.get(path)).toString().replace(File.separatorChar, '/');
+    }
+}
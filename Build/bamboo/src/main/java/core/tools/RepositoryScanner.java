@@ -0,0 +1,225 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * File level integrity checks of the core tree in one parallel pass, instead of
+ * one find per check script:
+ *
+ * - checkFilePermissions.sh: Files must have permission 0644
+ * - maxFilePathLength.sh: Relative file paths must be shorter than 160 characters
+ * - xlfcheck.sh: Xlf files need one xmlns:t3 and one t3:id, ids are unique
+ * - duplicateExceptionCodeCheck.sh: Exceptions thrown in php files need a
+ *   10 digit exception code, codes are unique
+ *
+ * Usage, from project root:
+ * RepositoryScanner [<directory>]
+ *
+ * Directory defaults to typo3/. Exits with 1 if a rule is violated.
+ */
+public class RepositoryScanner {
+
+    protected static Set<String> permissionIgnoredFiles = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        "typo3/cli_dispatch.phpsh",
+        "typo3/sysext/core/bin/typo3"
+    )));
+
+    protected static Set<PosixFilePermission> expectedPermissions = PosixFilePermissions.fromString("rw-r--r--");
+
+    protected static int maximumPathLength = 160;
+
+    protected static String xlfNamespace = "xmlns:t3=\"http://typo3.org/schemas/xliff\"";
+
+    protected static Pattern xlfId = Pattern.compile("t3:id=\"([0-9]+)\"");
+
+    protected static Set<String> exceptionCodeIgnoredFiles = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        // Auto generated file
+        "typo3/sysext/core/Build/Configuration/Acceptance/Support/_generated/AcceptanceTesterActions.php",
+        // Throws with the code of a previous exception
+        "typo3/sysext/extbase/Classes/Core/Bootstrap.php"
+    )));
+
+    protected static Pattern exceptionCreation = Pattern.compile("new (?:(?!Exception\\()[\\w\\\\])*Exception\\((?:(?!\\);).|[\\r\\n])*\\);[\\r\\n]+");
+
+    protected static Pattern exceptionCode = Pattern.compile("[0-9]{10}");
+
+    protected Path projectRoot;
+
+    /**
+     * Results of one file, collected concurrently
+     */
+    protected static class FileResult {
+        protected String file;
+        protected List<String> violations = new ArrayList<String>();
+        protected List<String> xlfIds = new ArrayList<String>();
+        protected List<String> exceptionCodes = new ArrayList<String>();
+    }
+
+    public RepositoryScanner(Path projectRoot) {
+        this.projectRoot = projectRoot.toAbsolutePath().normalize();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        List<String> violations = new RepositoryScanner(Paths.get("")).scan(args.length > 0 ? args[0] : "typo3/");
+        for (String violation : violations) {
+            System.out.println(violation);
+        }
+        System.out.println(violations.size() + " violations");
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Apply all rules to files below directory
+     *
+     * @param String directory Relative to project root
+     * @return Violations, sorted by rule and file
+     */
+    public List<String> scan(String directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(this.projectRoot.resolve(directory))) {
+            files = stream.filter(path -> Files.isRegularFile(path)).collect(Collectors.toList());
+        }
+
+        ConcurrentLinkedQueue<FileResult> results = new ConcurrentLinkedQueue<FileResult>();
+        try {
+            files.parallelStream().forEach(path -> results.add(this.scanFile(path)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<FileResult> sortedResults = new ArrayList<FileResult>(results);
+        sortedResults.sort((a, b) -> a.file.compareTo(b.file));
+        List<String> violations = new ArrayList<String>();
+        Map<String, List<String>> xlfIdFiles = new TreeMap<String, List<String>>();
+        Map<String, List<String>> exceptionCodeFiles = new TreeMap<String, List<String>>();
+        for (FileResult result : sortedResults) {
+            violations.addAll(result.violations);
+            for (String id : result.xlfIds) {
+                xlfIdFiles.computeIfAbsent(id, key -> new ArrayList<String>()).add(result.file);
+            }
+            for (String code : result.exceptionCodes) {
+                exceptionCodeFiles.computeIfAbsent(code, key -> new ArrayList<String>()).add(result.file);
+            }
+        }
+        for (Map.Entry<String, List<String>> id : xlfIdFiles.entrySet()) {
+            if (id.getValue().size() > 1) {
+                violations.add("Xlf t3:id " + id.getKey() + " is not unique: " + String.join(", ", id.getValue()));
+            }
+        }
+        for (Map.Entry<String, List<String>> code : exceptionCodeFiles.entrySet()) {
+            if (code.getValue().size() > 1) {
+                violations.add("Duplicate exception code " + code.getKey() + " in files: " + String.join(", ", code.getValue()));
+            }
+        }
+        return violations;
+    }
+
+    protected FileResult scanFile(Path path) {
+        FileResult result = new FileResult();
+        result.file = this.projectRoot.relativize(path).toString().replace(File.separatorChar, '/');
+        try {
+            if (!permissionIgnoredFiles.contains(result.file)
+                && !Files.getPosixFilePermissions(path).equals(expectedPermissions)
+            ) {
+                result.violations.add("Wrong file permission " + PosixFilePermissions.toString(Files.getPosixFilePermissions(path)) + ": " + result.file);
+            }
+            // Length as counted by wc -m, including the line break
+            if (result.file.length() + 1 > maximumPathLength) {
+                result.violations.add("Maximum path length " + maximumPathLength + " violated with " + (result.file.length() + 1) + " characters for file " + result.file);
+            }
+            if (result.file.endsWith(".xlf")) {
+                this.scanXlf(this.read(path), result);
+            } else if (result.file.endsWith(".php") && !exceptionCodeIgnoredFiles.contains(result.file)) {
+                this.scanExceptions(this.read(path), result);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Xlf files have one line with the t3 namespace and one line with an id
+     */
+    protected void scanXlf(String content, FileResult result) {
+        int namespaces = 0;
+        for (String line : content.split("\n")) {
+            if (line.contains(xlfNamespace)) {
+                namespaces++;
+            }
+            Matcher matcher = xlfId.matcher(line);
+            if (matcher.find()) {
+                result.xlfIds.add(matcher.group(1));
+            }
+        }
+        if (namespaces != 1) {
+            result.violations.add("Xlf file needs one xmlns for t3 (xmlns:t3), found " + namespaces + ": " + result.file);
+        }
+        if (result.xlfIds.size() != 1) {
+            result.violations.add("Xlf file needs one unique ID (t3:id), found " + result.xlfIds.size() + ": " + result.file);
+        }
+    }
+
+    /**
+     * Every exception creation needs a 10 digit code
+     */
+    protected void scanExceptions(String content, FileResult result) {
+        Matcher matcher = exceptionCreation.matcher(content);
+        while (matcher.find()) {
+            Matcher code = exceptionCode.matcher(matcher.group());
+            if (code.find()) {
+                result.exceptionCodes.add(code.group());
+            } else {
+                result.violations.add("Exception without 10 digit exception code as second argument in " + result.file + ": " + matcher.group().split("\n")[0].trim());
+            }
+        }
+    }
+
+    /**
+     * Memory mapped read, bytes map one to one to chars
+     */
+    protected String read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return "";
+            }
+            return StandardCharsets.ISO_8859_1.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).toString();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Find running builds of a gerrit change that are superseded by a newer patch set.
+ *
+ * Pre-merge builds are labeled change-<id> and patchset-<n> by the build labels
+ * job. Given the result list of the plan, in-flight builds of the same change
+ * with an older patch set are superseded by this build. If a build of a newer
+ * patch set is already running, this build itself is superseded.
+ *
+ * Usage, with the xml of /rest/api/latest/result/<planKey>?includeAllStates=true&expand=results.result.labels:
+ * SupersededBuilds <results xml> <own result key> <changeUrl> <patchset>
+ *
+ * Prints the result keys to stop, one per line.
+ */
+public class SupersededBuilds {
+
+    /**
+     * Change id is the second group, also used by the build labels job
+     */
+    public static String changeUrlPattern = "https:\\/\\/review\\.typo3\\.org\\/(#\\/c\\/)?(\\d+)";
+
+    protected static List<String> inFlightStates = Arrays.asList("Pending", "Queued", "InProgress");
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 4) {
+            System.err.println("Usage: SupersededBuilds <resultsXml> <ownResultKey> <changeUrl> <patchset>");
+            System.exit(1);
+        }
+        String changeId = parseChangeId(args[2]);
+        if (changeId == null || args[3].isEmpty()) {
+            return;
+        }
+        Document results = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(args[0]));
+        for (String resultKey : new SupersededBuilds().select(results, args[1], changeId, Integer.parseInt(args[3]))) {
+            System.out.println(resultKey);
+        }
+    }
+
+    /**
+     * @param String changeUrl
+     * @return Change id, or null if this is no gerrit change
+     */
+    public static String parseChangeId(String changeUrl) {
+        Matcher matcher = Pattern.compile(changeUrlPattern).matcher(changeUrl);
+        return matcher.find() ? matcher.group(2) : null;
+    }
+
+    /**
+     * In-flight results of the change that are superseded. Own result comes last if
+     * superseded, so older builds are stopped before this one.
+     *
+     * @param Document results
+     * @param String ownResultKey
+     * @param String changeId
+     * @param int patchset
+     */
+    public List<String> select(Document results, String ownResultKey, String changeId, int patchset) {
+        List<String> superseded = new ArrayList<String>();
+        boolean ownResultSuperseded = false;
+        NodeList resultNodes = results.getElementsByTagName("result");
+        for (int i = 0; i < resultNodes.getLength(); i++) {
+            Element result = (Element) resultNodes.item(i);
+            String resultKey = result.getAttribute("key");
+            if (resultKey.equals(ownResultKey) || !inFlightStates.contains(result.getAttribute("lifeCycleState"))) {
+                continue;
+            }
+            boolean sameChange = false;
+            int resultPatchset = -1;
+            NodeList labels = result.getElementsByTagName("label");
+            for (int j = 0; j < labels.getLength(); j++) {
+                String label = ((Element) labels.item(j)).getAttribute("name");
+                if (label.equals("change-" + changeId)) {
+                    sameChange = true;
+                } else if (label.matches("patchset-\\d+")) {
+                    resultPatchset = Integer.parseInt(label.substring("patchset-".length()));
+                }
+            }
+            if (!sameChange || resultPatchset < 0) {
+                continue;
+            }
+            if (resultPatchset < patchset) {
+                superseded.add(resultKey);
+            } else if (resultPatchset > patchset) {
+                ownResultSuperseded = true;
+            }
+        }
+        if (ownResultSuperseded) {
+            superseded.add(ownResultKey);
+        }
+        return superseded;
+    }
+}
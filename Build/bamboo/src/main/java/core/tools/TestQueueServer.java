@@ -0,0 +1,199 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal work queue service distributing test chunks to the jobs of a plan
+ * run: each job pulls the next chunk until the queue is empty, so fast agents
+ * take more chunks than slow ones.
+ *
+ * PUT  /queues/<name>  Body with one item per line, creates the queue.
+ *                      Only the first fill counts, so every job may send it.
+ * POST /queues/<name>/next?consumer=<job>&session=<run>
+ *                      Next item, or 204 if the queue is empty.
+ *
+ * If a consumer comes back with a new session, a rerun of a failed job, it
+ * first gets the items of its earlier session again. Queues expire after a day.
+ *
+ * Usage, as stand-in service on a local machine or an agent host:
+ * TestQueueServer <port>
+ */
+public class TestQueueServer {
+
+    protected static long queueLifetimeMillis = 24 * 60 * 60 * 1000L;
+
+    protected Map<String, Queue> queues = new HashMap<String, Queue>();
+
+    protected static class Queue {
+        protected long created = System.currentTimeMillis();
+
+        protected ArrayDeque<String> pending = new ArrayDeque<String>();
+
+        protected Map<String, String> consumerSessions = new HashMap<String, String>();
+
+        protected Map<String, List<String>> consumerItems = new HashMap<String, List<String>>();
+
+        protected Map<String, ArrayDeque<String>> replays = new HashMap<String, ArrayDeque<String>>();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: TestQueueServer <port>");
+            System.exit(1);
+        }
+        TestQueueServer queueServer = new TestQueueServer();
+        HttpServer server = HttpServer.create(new InetSocketAddress(Integer.parseInt(args[0])), 0);
+        server.createContext("/queues/", exchange -> queueServer.handle(exchange));
+        server.start();
+        System.out.println("Test queue listening on port " + args[0]);
+    }
+
+    /**
+     * Create a queue, unless it exists already
+     *
+     * @param String name
+     * @param List<String> items
+     * @return true if the queue has been created
+     */
+    public synchronized boolean fill(String name, List<String> items) {
+        this.expire();
+        if (this.queues.containsKey(name)) {
+            return false;
+        }
+        Queue queue = new Queue();
+        for (String item : items) {
+            if (!item.trim().isEmpty()) {
+                queue.pending.add(item.trim());
+            }
+        }
+        this.queues.put(name, queue);
+        return true;
+    }
+
+    /**
+     * Next item for a consumer
+     *
+     * @param String name
+     * @param String consumer Job key
+     * @param String session Unique per job execution
+     * @return Item, or null if there is nothing left for this consumer
+     */
+    public synchronized String next(String name, String consumer, String session) {
+        Queue queue = this.queues.get(name);
+        if (queue == null) {
+            throw new IllegalArgumentException("Unknown queue " + name);
+        }
+        String knownSession = queue.consumerSessions.get(consumer);
+        if (knownSession != null && !knownSession.equals(session)) {
+            queue.replays.put(consumer, new ArrayDeque<String>(queue.consumerItems.get(consumer)));
+        }
+        queue.consumerSessions.put(consumer, session);
+        if (!queue.consumerItems.containsKey(consumer)) {
+            queue.consumerItems.put(consumer, new ArrayList<String>());
+        }
+
+        ArrayDeque<String> replay = queue.replays.get(consumer);
+        if (replay != null && !replay.isEmpty()) {
+            return replay.poll();
+        }
+        String item = queue.pending.poll();
+        if (item != null) {
+            queue.consumerItems.get(consumer).add(item);
+        }
+        return item;
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath().substring("/queues/".length());
+            Map<String, String> query = this.parseQuery(exchange.getRequestURI().getRawQuery());
+            if (exchange.getRequestMethod().equals("PUT") && !path.contains("/")) {
+                String body = new String(this.readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+                boolean created = this.fill(path, Arrays.asList(body.split("\n")));
+                this.respond(exchange, created ? 201 : 200, "");
+            } else if (exchange.getRequestMethod().equals("POST") && path.endsWith("/next")
+                && query.containsKey("consumer") && query.containsKey("session")
+            ) {
+                String item = this.next(path.substring(0, path.length() - "/next".length()), query.get("consumer"), query.get("session"));
+                this.respond(exchange, item == null ? 204 : 200, item == null ? "" : item + "\n");
+            } else {
+                this.respond(exchange, 400, "Bad request\n");
+            }
+        } catch (IllegalArgumentException e) {
+            this.respond(exchange, 404, e.getMessage() + "\n");
+        }
+    }
+
+    protected synchronized void expire() {
+        Iterator<Queue> iterator = this.queues.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().created < System.currentTimeMillis() - queueLifetimeMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    protected void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream stream = exchange.getResponseBody()) {
+                stream.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    protected Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            if (pair.length == 2) {
+                parameters.put(URLDecoder.decode(pair[0], "UTF-8"), URLDecoder.decode(pair[1], "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    protected byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int length;
+        while ((length = stream.read(chunk)) > 0) {
+            buffer.write(chunk, 0, length);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,55 @@
+package core;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ChunkSizingTest {
+    @Test
+    public void numbersOfChunksMeetTargetWithEnoughAgents() {
+        Map<String, Double> suiteSeconds = new LinkedHashMap<String, Double>();
+        suiteSeconds.put("functional.mysql", 5400.0);
+        suiteSeconds.put("acceptance", 1000.0);
+
+        Map<String, Integer> numbersOfChunks = new ChunkSizing(50, 600, 60, suiteSeconds).getNumbersOfChunks();
+
+        assertEquals(10, (int) numbersOfChunks.get("functional.mysql"));
+        assertEquals(2, (int) numbersOfChunks.get("acceptance"));
+    }
+
+    @Test
+    public void numbersOfChunksAreLimitedByAgents() {
+        Map<String, Double> suiteSeconds = new LinkedHashMap<String, Double>();
+        suiteSeconds.put("functional.mysql", 6000.0);
+        suiteSeconds.put("functional.pgsql", 3000.0);
+
+        ChunkSizing chunkSizing = new ChunkSizing(6, 600, 60, suiteSeconds);
+        Map<String, Integer> numbersOfChunks = chunkSizing.getNumbersOfChunks();
+
+        assertEquals(4, (int) numbersOfChunks.get("functional.mysql"));
+        assertEquals(2, (int) numbersOfChunks.get("functional.pgsql"));
+        assertTrue(chunkSizing.getChunkSeconds("functional.mysql", 4) > 600);
+    }
+
+    @Test
+    public void loadReadsPlanSizing() {
+        assertTrue(ChunkSizing.load("GTC").getNumberOfChunks("functional.mysql") > 1);
+    }
+}
@@ -26,4 +26,13 @@ public class PreMergeSpecTest {
 
         EntityPropertiesBuilders.build(plan);
     }
+
+    @Test
+    public void checkYourSpeculativePlanOffline() throws PropertiesValidationException {
+        PreMergeSpec spec = new PreMergeSpec();
+        spec.useSpeculativeMainStage = true;
+        Plan plan = spec.createPlan();
+
+        EntityPropertiesBuilders.build(plan);
+    }
 }
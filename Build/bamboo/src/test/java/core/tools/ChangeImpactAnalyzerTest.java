@@ -0,0 +1,122 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ChangeImpactAnalyzerTest {
+    @Test
+    public void analyzeAddsExtensionsRequiringChangedExtension() throws Exception {
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(this.createProject());
+        analyzer.analyze(Arrays.asList("typo3/sysext/backend/Classes/Foo.php"));
+
+        assertEquals(Arrays.asList("backend", "form"), Arrays.asList(analyzer.getExtensions().toArray()));
+        assertTrue(analyzer.getSuites().contains("functional"));
+        assertFalse(analyzer.getSuites().contains("javascript"));
+    }
+
+    @Test
+    public void analyzeRunsNothingForDocumentationChanges() throws Exception {
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(this.createProject());
+        analyzer.analyze(Arrays.asList("typo3/sysext/core/Documentation/Changelog/master/Feature-1.rst"));
+
+        assertTrue(analyzer.getSuites().isEmpty());
+    }
+
+    @Test
+    public void analyzeRunsEverythingForChangesOutsideExtensions() throws Exception {
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(this.createProject());
+        analyzer.analyze(Arrays.asList("typo3/sysext/form/Resources/Public/JavaScript/Bar.js", "composer.lock"));
+
+        assertEquals(ChangeImpactAnalyzer.allSuites, Arrays.asList(analyzer.getSuites().toArray()));
+        assertTrue(analyzer.getExtensions().isEmpty());
+    }
+
+    @Test
+    public void analyzeTreatsTestFixturesAsExtensionChanges() throws Exception {
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(this.createProject());
+        analyzer.analyze(Arrays.asList(
+            "typo3/sysext/backend/Tests/Functional/Fixtures/Extensions/test/Configuration/TypoScript/Setup.ts",
+            "typo3/sysext/backend/Tests/Unit/Fixtures/compressed.css"
+        ));
+
+        assertEquals(Arrays.asList("backend", "form"), Arrays.asList(analyzer.getExtensions().toArray()));
+        assertTrue(analyzer.getSuites().contains("functional"));
+        assertTrue(analyzer.getSuites().contains("unit"));
+        assertFalse(analyzer.getSuites().contains("javascript"));
+    }
+
+    @Test
+    public void analyzeRunsFrontendSuitesForFrontendSources() throws Exception {
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(this.createProject());
+        analyzer.analyze(Arrays.asList("typo3/sysext/backend/Resources/Private/TypeScript/Foo.ts", "Build/package.json"));
+
+        assertEquals(Arrays.asList("acceptance", "javascript", "scssts"), Arrays.asList(analyzer.getSuites().toArray()));
+        assertTrue(analyzer.getExtensions().isEmpty());
+    }
+
+    @Test
+    public void writeUnitTestConfigurationsRestrictsTestDirectories() throws Exception {
+        Path projectRoot = this.createProject();
+        Path templateDirectory = Files.createDirectories(projectRoot.resolve("vendor/typo3/testing-framework/Resources/Core/Build"));
+        Files.write(templateDirectory.resolve("UnitTests.xml"), (
+            "<phpunit bootstrap=\"UnitTestsBootstrap.php\">" +
+            "<testsuites><testsuite name=\"Core tests\">" +
+            "<directory>../../../../../../typo3/sysext/*/Tests/Unit/</directory>" +
+            "</testsuite></testsuites>" +
+            "</phpunit>"
+        ).getBytes("UTF-8"));
+
+        ChangeImpactAnalyzer analyzer = new ChangeImpactAnalyzer(projectRoot);
+        analyzer.analyze(Arrays.asList("typo3/sysext/backend/Classes/Foo.php"));
+        analyzer.writeUnitTestConfigurations(templateDirectory, projectRoot.resolve("impact"));
+
+        String configuration = new String(Files.readAllBytes(projectRoot.resolve("impact/UnitTests.xml")), "UTF-8");
+        assertTrue(configuration.contains("<directory>../typo3/sysext/backend/Tests/Unit</directory>"));
+        assertFalse(configuration.contains("form"));
+        assertTrue(configuration.contains("bootstrap=\"../vendor/typo3/testing-framework/Resources/Core/Build/UnitTestsBootstrap.php\""));
+    }
+
+    /**
+     * Extensions core, backend requiring core, form requiring backend,
+     * and unrelated extension info. Only backend has unit tests.
+     */
+    protected Path createProject() throws Exception {
+        Path projectRoot = Files.createTempDirectory("impact");
+        this.createExtension(projectRoot, "core", "");
+        this.createExtension(projectRoot, "backend", "\"typo3/cms-core\": \"9.2.0\"");
+        this.createExtension(projectRoot, "form", "\"typo3/cms-backend\": \"9.2.0\", \"typo3/cms-core\": \"9.2.0\"");
+        this.createExtension(projectRoot, "info", "\"typo3/cms-core\": \"9.2.0\"");
+        Files.createDirectories(projectRoot.resolve("typo3/sysext/backend/Tests/Unit"));
+        Files.createDirectories(projectRoot.resolve("typo3/sysext/backend/Tests/Functional"));
+        return projectRoot;
+    }
+
+    protected void createExtension(Path projectRoot, String extension, String require) throws Exception {
+        Path directory = Files.createDirectories(projectRoot.resolve("typo3/sysext/" + extension));
+        Files.write(directory.resolve("composer.json"), (
+            "{\"name\": \"typo3/cms-" + extension + "\", \"require\": {\"php\": \"^7.2\"" +
+            (require.isEmpty() ? "" : ", " + require) +
+            "}, \"suggest\": {\"typo3/cms-info\": \"9.2.0\"}}"
+        ).getBytes("UTF-8"));
+    }
+}
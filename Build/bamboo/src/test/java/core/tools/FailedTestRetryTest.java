@@ -0,0 +1,80 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class FailedTestRetryTest {
+    @Test
+    public void createFilterMatchesFailedMethodsWithAllDataSets() throws Exception {
+        FailedTestRetry retry = new FailedTestRetry();
+        Set<String> failedTests = retry.getFailedTests(this.createReport());
+
+        assertEquals(Arrays.asList("TYPO3\\CMS\\Core\\Tests\\FooTest::testA", "TYPO3\\CMS\\Core\\Tests\\FooTest::testC"), Arrays.asList(failedTests.toArray()));
+        assertEquals(
+            "/^(TYPO3\\\\CMS\\\\Core\\\\Tests\\\\FooTest::testA|TYPO3\\\\CMS\\\\Core\\\\Tests\\\\FooTest::testC)( with data set .*)?$/",
+            retry.createFilter(failedTests)
+        );
+    }
+
+    @Test
+    public void mergeReplacesFailedTestCasesAndUpdatesCounters() throws Exception {
+        FailedTestRetry retry = new FailedTestRetry();
+        Document report = this.createReport();
+        Document retryReport = this.parse(
+            "<testsuites><testsuite name=\"\" tests=\"2\" failures=\"0\" errors=\"1\">" +
+            this.testCase("testA", "") +
+            this.testCase("testC with data set #1", "<error>Deadlock</error>") +
+            "</testsuite></testsuites>"
+        );
+
+        assertEquals(Arrays.asList("TYPO3\\CMS\\Core\\Tests\\FooTest::testA"), retry.merge(report, retryReport));
+        assertEquals(Arrays.asList("TYPO3\\CMS\\Core\\Tests\\FooTest::testC"), Arrays.asList(retry.getFailedTests(report).toArray()));
+        Element suite = (Element) report.getElementsByTagName("testsuite").item(0);
+        assertEquals("0", suite.getAttribute("failures"));
+        assertEquals("1", suite.getAttribute("errors"));
+        assertEquals(4, report.getElementsByTagName("testcase").getLength());
+        assertTrue(retry.merge(report, this.parse("<testsuites/>")).isEmpty());
+    }
+
+    protected Document createReport() throws Exception {
+        return this.parse(
+            "<testsuites><testsuite name=\"\" tests=\"4\" failures=\"1\" errors=\"1\">" +
+            this.testCase("testA", "<failure>Expected 1</failure>") +
+            this.testCase("testB", "") +
+            this.testCase("testC with data set #0", "") +
+            this.testCase("testC with data set #1", "<error>Deadlock</error>") +
+            "</testsuite></testsuites>"
+        );
+    }
+
+    protected String testCase(String name, String result) {
+        return "<testcase name=\"" + name + "\" class=\"TYPO3\\CMS\\Core\\Tests\\FooTest\">" + result + "</testcase>";
+    }
+
+    protected Document parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+}
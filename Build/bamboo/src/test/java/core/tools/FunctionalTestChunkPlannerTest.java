@@ -0,0 +1,116 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FunctionalTestChunkPlannerTest {
+    @Test
+    public void planBalancesChunksByDuration() {
+        List<String> files = Arrays.asList("a", "b", "c", "d", "e", "f");
+        Map<String, Double> durations = new HashMap<String, Double>();
+        durations.put("a", 10.0);
+        durations.put("b", 9.0);
+        durations.put("c", 5.0);
+        durations.put("d", 4.0);
+        durations.put("e", 1.0);
+        durations.put("f", 1.0);
+
+        FunctionalTestChunkPlanner planner = new FunctionalTestChunkPlanner(Paths.get(""));
+        List<List<String>> chunks = planner.plan(files, durations, 2);
+        double[] loads = planner.getChunkLoads(chunks, durations, files);
+
+        assertEquals(2, chunks.size());
+        assertEquals(15.0, loads[0], 0.001);
+        assertEquals(15.0, loads[1], 0.001);
+    }
+
+    @Test
+    public void planWeightsUnknownFilesWithAverageDuration() {
+        List<String> files = Arrays.asList("a", "b", "unknown");
+        Map<String, Double> durations = new HashMap<String, Double>();
+        durations.put("a", 4.0);
+        durations.put("b", 2.0);
+
+        FunctionalTestChunkPlanner planner = new FunctionalTestChunkPlanner(Paths.get(""));
+        List<List<String>> chunks = planner.plan(files, durations, 2);
+
+        assertEquals(Arrays.asList("a"), chunks.get(0));
+        assertEquals(Arrays.asList("b", "unknown"), chunks.get(1));
+    }
+
+    @Test
+    public void readDurationsNormalizesAgentPaths() throws Exception {
+        Path reportDirectory = Files.createTempDirectory("durations");
+        Files.write(reportDirectory.resolve("CORE-GTC-FMYPHP7201.xml"), (
+            "<testsuites>" +
+            "<testsuite name=\"\" tests=\"3\" time=\"3.5\">" +
+            "<testsuite name=\"FooTest\" file=\"/srv/bamboo/xml-data/build-dir/CORE-GTC-FMYPHP7201/typo3/sysext/core/Tests/Functional/FooTest.php\" time=\"3.5\">" +
+            "<testsuite name=\"FooTest::barDataProvider\" time=\"1.5\"/>" +
+            "</testsuite>" +
+            "</testsuite>" +
+            "</testsuites>"
+        ).getBytes("UTF-8"));
+
+        Map<String, Double> durations = new FunctionalTestChunkPlanner(Paths.get("")).readDurations(reportDirectory);
+
+        assertEquals(1, durations.size());
+        assertTrue(durations.containsKey("typo3/sysext/core/Tests/Functional/FooTest.php"));
+        assertEquals(3.5, durations.get("typo3/sysext/core/Tests/Functional/FooTest.php"), 0.001);
+    }
+
+    @Test
+    public void readDurationsAveragesReportsOfDatabases() throws Exception {
+        Path reportDirectory = Files.createTempDirectory("durations");
+        Files.write(reportDirectory.resolve("FMYPHP7201.xml"), this.report("FMYPHP7201", "2.0").getBytes("UTF-8"));
+        Files.write(reportDirectory.resolve("FSLPHP7201.xml"), this.report("FSLPHP7201", "4.0").getBytes("UTF-8"));
+
+        Map<String, Double> durations = new FunctionalTestChunkPlanner(Paths.get("")).readDurations(reportDirectory);
+
+        assertEquals(3.0, durations.get("typo3/sysext/core/Tests/Functional/FooTest.php"), 0.001);
+    }
+
+    @Test
+    public void writeDurationsIsReadableByReadDurations() throws Exception {
+        Path history = Files.createTempDirectory("history").resolve("durations.xml");
+        Map<String, Double> durations = new HashMap<String, Double>();
+        durations.put("typo3/sysext/core/Tests/Functional/FooTest.php", 2.5);
+        durations.put("typo3/sysext/backend/Tests/Functional/BarTest.php", 1.0);
+
+        FunctionalTestChunkPlanner planner = new FunctionalTestChunkPlanner(Paths.get(""));
+        planner.writeDurations(durations, history);
+
+        assertEquals(durations, planner.readDurations(Arrays.asList(history, history.resolveSibling("missing.xml"))));
+    }
+
+    protected String report(String jobKey, String time) {
+        return
+            "<testsuites>" +
+            "<testsuite name=\"\" tests=\"1\" time=\"" + time + "\">" +
+            "<testsuite name=\"FooTest\" file=\"/srv/bamboo/xml-data/build-dir/CORE-GTC-" + jobKey + "/typo3/sysext/core/Tests/Functional/FooTest.php\" time=\"" + time + "\"/>" +
+            "</testsuite>" +
+            "</testsuites>";
+    }
+}
@@ -0,0 +1,58 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PhaseTimingReportTest {
+    @Test
+    public void readIgnoresBrokenLines() throws Exception {
+        Path directory = Files.createTempDirectory("timing");
+        Files.createDirectories(directory.resolve("GTC-FMY01"));
+        Files.write(directory.resolve("GTC-FMY01/GTC-FMY01.jsonl"), Arrays.asList(
+            "{\"plan\":\"GTC-7\",\"job\":\"GTC-FMY01\",\"agent\":\"a1\", \"phase\":\"composer-install\",\"start\":0,\"end\":60000,\"exit\":0}",
+            "{\"plan\":\"GTC-7\",\"job\":\"GTC-FMY01\",\"agent\":\"a1\", \"phase\":\"test\",\"start\":60000,"
+        ));
+
+        List<PhaseTimingReport.PhaseTiming> timings = new PhaseTimingReport().read(directory);
+        assertEquals(1, timings.size());
+        assertEquals("composer-install", timings.get(0).phase);
+        assertEquals(60000, timings.get(0).getMillis());
+    }
+
+    @Test
+    public void formatRollsUpPhasesPerPlanRun() throws Exception {
+        PhaseTimingReport report = new PhaseTimingReport();
+        String formatted = report.format(Arrays.asList(
+            report.parse("{\"plan\":\"GTC-7\",\"job\":\"GTC-FMY01\",\"phase\":\"test\",\"start\":0,\"end\":180000,\"exit\":1}"),
+            report.parse("{\"plan\":\"GTC-7\",\"job\":\"GTC-FMY02\",\"phase\":\"test\",\"start\":0,\"end\":120000,\"exit\":0}"),
+            report.parse("{\"plan\":\"GTC-7\",\"job\":\"GTC-FMY02\",\"phase\":\"docker-start\",\"start\":120000,\"end\":180000,\"exit\":0}"),
+            report.parse("{\"plan\":\"GTC-8\",\"job\":\"GTC-FMY01\",\"phase\":\"test\",\"start\":0,\"end\":60000,\"exit\":0}")
+        ));
+
+        assertTrue(formatted.contains("Plan run GTC-7: 2 jobs, 6.0 agent minutes, 3.0 minutes wall clock"));
+        assertTrue(formatted.contains(String.format("%-20s %7d %7d %9.1f %6.1f%% %9.1f", "test", 2, 1, 5.0, 83.3, 3.0)));
+        assertTrue(formatted.contains(String.format("%-20s %7d %7d %9.1f %6.1f%% %9.1f", "docker-start", 1, 0, 1.0, 16.7, 1.0)));
+        assertTrue(formatted.indexOf("test ") < formatted.indexOf("docker-start"));
+        assertTrue(formatted.contains("Plan run GTC-8: 1 jobs"));
+    }
+}
@@ -0,0 +1,47 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PhpLintCacheTest {
+    @Test
+    public void selectSkipsFilesLintedBeforeButNotFailedOnes() throws Exception {
+        Path projectRoot = Files.createTempDirectory("lint");
+        Files.createDirectories(projectRoot.resolve("typo3/sysext/core/Classes"));
+        Files.createDirectories(projectRoot.resolve("vendor/foo"));
+        Files.write(projectRoot.resolve("typo3/sysext/core/Classes/Good.php"), "<?php echo 1;".getBytes("UTF-8"));
+        Files.write(projectRoot.resolve("typo3/sysext/core/Classes/Bad.php"), "<?php echo ;".getBytes("UTF-8"));
+        Files.write(projectRoot.resolve("vendor/foo/Vendor.php"), "<?php echo 2;".getBytes("UTF-8"));
+
+        PhpLintCache cache = new PhpLintCache(projectRoot);
+        List<String> files = cache.findPhpFiles();
+        assertEquals(Arrays.asList("./typo3/sysext/core/Classes/Bad.php", "./typo3/sysext/core/Classes/Good.php"), files);
+
+        LinkedHashSet<String> hashes = cache.update(new LinkedHashSet<String>(), files, Collections.singleton("./typo3/sysext/core/Classes/Bad.php"));
+        assertEquals(Arrays.asList("./typo3/sysext/core/Classes/Bad.php"), cache.select(hashes, files));
+
+        Files.write(projectRoot.resolve("typo3/sysext/core/Classes/Good.php"), "<?php echo 3;".getBytes("UTF-8"));
+        assertEquals(files, cache.select(hashes, files));
+    }
+}
@@ -0,0 +1,56 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RepositoryScannerTest {
+    @Test
+    public void scanFindsViolationsOfAllRules() throws Exception {
+        Path projectRoot = Files.createTempDirectory("scanner");
+        Path classes = Files.createDirectories(projectRoot.resolve("typo3/sysext/core/Classes"));
+        Path language = Files.createDirectories(projectRoot.resolve("typo3/sysext/core/Resources/Private/Language"));
+
+        this.write(classes.resolve("Good.php"), "<?php\nthrow new \\RuntimeException('a', 1530000001);\n");
+        this.write(classes.resolve("Duplicate.php"), "<?php\nthrow new \\UnexpectedValueException(\n    'b',\n    1530000001\n);\n");
+        this.write(classes.resolve("Missing.php"), "<?php\nthrow new Exception('c');\n");
+        this.write(language.resolve("a.xlf"), "<xliff xmlns:t3=\"http://typo3.org/schemas/xliff\">\n<file t3:id=\"1415814800\">\n");
+        this.write(language.resolve("b.xlf"), "<xliff>\n<file t3:id=\"1415814800\">\n");
+        char[] name = new char[150];
+        Arrays.fill(name, 'a');
+        this.write(classes.resolve(new String(name) + ".txt"), "");
+        Files.setPosixFilePermissions(classes.resolve("Good.php"), PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        assertEquals(Arrays.asList(
+            "Wrong file permission rwxr-xr-x: typo3/sysext/core/Classes/Good.php",
+            "Exception without 10 digit exception code as second argument in typo3/sysext/core/Classes/Missing.php: new Exception('c');",
+            "Maximum path length 160 violated with 181 characters for file typo3/sysext/core/Classes/" + new String(name) + ".txt",
+            "Xlf file needs one xmlns for t3 (xmlns:t3), found 0: typo3/sysext/core/Resources/Private/Language/b.xlf",
+            "Xlf t3:id 1415814800 is not unique: typo3/sysext/core/Resources/Private/Language/a.xlf, typo3/sysext/core/Resources/Private/Language/b.xlf",
+            "Duplicate exception code 1530000001 in files: typo3/sysext/core/Classes/Duplicate.php, typo3/sysext/core/Classes/Good.php"
+        ), new RepositoryScanner(projectRoot).scan("typo3/"));
+    }
+
+    protected void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes("UTF-8"));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+    }
+}
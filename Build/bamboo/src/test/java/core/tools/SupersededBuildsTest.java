@@ -0,0 +1,71 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class SupersededBuildsTest {
+    @Test
+    public void parseChangeIdAcceptsBothGerritUrlForms() {
+        assertEquals("56789", SupersededBuilds.parseChangeId("https://review.typo3.org/56789/"));
+        assertEquals("56789", SupersededBuilds.parseChangeId("https://review.typo3.org/#/c/56789/"));
+        assertNull(SupersededBuilds.parseChangeId(""));
+    }
+
+    @Test
+    public void selectReturnsOlderInFlightPatchsetsOfSameChange() throws Exception {
+        Document results = this.createResults(
+            this.result("CORE-GTC-10", "InProgress", "change-56789", "patchset-1"),
+            this.result("CORE-GTC-11", "Finished", "change-56789", "patchset-2"),
+            this.result("CORE-GTC-12", "Queued", "change-11111", "patchset-1"),
+            this.result("CORE-GTC-13", "InProgress", "change-56789", "patchset-3")
+        );
+
+        assertEquals(Arrays.asList("CORE-GTC-10"), new SupersededBuilds().select(results, "CORE-GTC-13", "56789", 3));
+        assertEquals(Collections.emptyList(), new SupersededBuilds().select(results, "CORE-GTC-12", "11111", 1));
+    }
+
+    @Test
+    public void selectReturnsOwnBuildIfNewerPatchsetIsRunning() throws Exception {
+        Document results = this.createResults(
+            this.result("CORE-GTC-20", "InProgress", "change-56789", "patchset-4"),
+            this.result("CORE-GTC-19", "InProgress", "change-56789", "patchset-2")
+        );
+
+        assertEquals(Arrays.asList("CORE-GTC-19", "CORE-GTC-21"), new SupersededBuilds().select(results, "CORE-GTC-21", "56789", 3));
+    }
+
+    protected Document createResults(String... results) throws Exception {
+        String xml = "<results><results size=\"" + results.length + "\">" + String.join("", results) + "</results></results>";
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    protected String result(String key, String lifeCycleState, String... labels) {
+        String labelElements = "";
+        for (String label : labels) {
+            labelElements += "<label name=\"" + label + "\"/>";
+        }
+        return "<result key=\"" + key + "\" lifeCycleState=\"" + lifeCycleState + "\"><labels>" + labelElements + "</labels></result>";
+    }
+}
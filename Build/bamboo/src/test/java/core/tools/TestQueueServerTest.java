@@ -0,0 +1,60 @@
+package core.tools;
+
+/*
+ * This file is part of the TYPO3 CMS project.
+ *
+ * It is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License, either version 2
+ * of the License, or any later version.
+ *
+ * For the full copyright and license information, please read the
+ * LICENSE.txt file that was distributed with this source code.
+ *
+ * The TYPO3 project - inspiring people to share!
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestQueueServerTest {
+    @Test
+    public void fillCountsOnlyFirstCall() {
+        TestQueueServer server = new TestQueueServer();
+        assertTrue(server.fill("FMY", Arrays.asList("1", "2", "")));
+        assertFalse(server.fill("FMY", Arrays.asList("3")));
+
+        assertEquals("1", server.next("FMY", "FMY01", "a"));
+        assertEquals("2", server.next("FMY", "FMY02", "b"));
+        assertNull(server.next("FMY", "FMY01", "a"));
+    }
+
+    @Test
+    public void nextReplaysItemsOfEarlierSessionToRerunConsumer() {
+        TestQueueServer server = new TestQueueServer();
+        server.fill("FMY", Arrays.asList("1", "2", "3"));
+        assertEquals("1", server.next("FMY", "FMY01", "a"));
+        assertEquals("2", server.next("FMY", "FMY01", "a"));
+        assertEquals("3", server.next("FMY", "FMY02", "b"));
+
+        assertEquals("1", server.next("FMY", "FMY01", "c"));
+        assertEquals("2", server.next("FMY", "FMY01", "c"));
+        assertNull(server.next("FMY", "FMY01", "c"));
+    }
+
+    @Test
+    public void nextThrowsForUnknownQueue() {
+        try {
+            new TestQueueServer().next("FPG", "FPG01", "a");
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown queue FPG", e.getMessage());
+        }
+    }
+}
@@ -14,8 +14,11 @@ namespace TYPO3\CMS\Core\Tests\Functional\DataHandling;
  * The TYPO3 project - inspiring people to share!
  */
 
+use Doctrine\DBAL\Platforms\MySqlPlatform;
+use Doctrine\DBAL\Platforms\PostgreSqlPlatform;
 use TYPO3\CMS\Core\Core\Bootstrap;
 use TYPO3\CMS\Core\Database\Connection;
+use TYPO3\CMS\Core\Database\ConnectionPool;
 use TYPO3\CMS\Core\Utility\GeneralUtility;
 use TYPO3\TestingFramework\Core\Functional\Framework\Constraint\RequestSection\DoesNotHaveRecordConstraint;
 use TYPO3\TestingFramework\Core\Functional\Framework\Constraint\RequestSection\HasRecordConstraint;
@@ -78,6 +81,13 @@ abstract class AbstractDataHandlerActionTestCase extends FunctionalTestCase
      */
     protected $backendUser;
 
+    /**
+     * Native copies of imported scenario data sets by database and file hash
+     *
+     * @var array
+     */
+    protected static $scenarioDataSetSnapshots = [];
+
     protected function setUp()
     {
         parent::setUp();
@@ -109,13 +119,126 @@ abstract class AbstractDataHandlerActionTestCase extends FunctionalTestCase
     }
 
     /**
+     * If environment variable typo3DatabaseFixtureSnapshots is set, the first import
+     * of a data set into empty tables is copied in the native format of mysql or
+     * postgres. Later imports of the same data set into empty tables restore that
+     * copy instead of parsing and inserting the csv row by row.
+     *
      * @param string $dataSetName
      */
     protected function importScenarioDataSet($dataSetName)
     {
         $fileName = rtrim($this->scenarioDataSetDirectory, '/') . '/' . $dataSetName . '.csv';
         $fileName = GeneralUtility::getFileAbsFileName($fileName);
+        $connection = $this->getConnectionPool()->getConnectionByName(ConnectionPool::DEFAULT_CONNECTION_NAME);
+        $platform = $connection->getDatabasePlatform();
+        if (!getenv('typo3DatabaseFixtureSnapshots')
+            || (!$platform instanceof MySqlPlatform && !$platform instanceof PostgreSqlPlatform)
+        ) {
+            $this->importCSVDataSet($fileName);
+            return;
+        }
+
+        $tableNames = $this->getScenarioDataSetTableNames($fileName);
+        foreach ($tableNames as $tableName) {
+            // Rows of other data sets or of the test itself are not part of a snapshot
+            if ((int)$connection->executeQuery('SELECT COUNT(*) FROM ' . $connection->quoteIdentifier($tableName))->fetchColumn(0) > 0) {
+                $this->importCSVDataSet($fileName);
+                return;
+            }
+        }
+        $database = $connection->getDatabase();
+        $hash = sha1_file($fileName);
+        if (isset(self::$scenarioDataSetSnapshots[$database][$hash])) {
+            $this->restoreScenarioDataSetSnapshot($connection, self::$scenarioDataSetSnapshots[$database][$hash]);
+            return;
+        }
         $this->importCSVDataSet($fileName);
+        self::$scenarioDataSetSnapshots[$database][$hash] = $this->createScenarioDataSetSnapshot($connection, $tableNames, $hash);
+    }
+
+    /**
+     * Tables of a csv data set, the first column of a line names the table
+     *
+     * @param string $fileName
+     * @return string[]
+     */
+    protected function getScenarioDataSetTableNames($fileName)
+    {
+        $tableNames = [];
+        $fileHandle = fopen($fileName, 'r');
+        while (($values = fgetcsv($fileHandle, 0)) !== false) {
+            $tableName = trim($values[0] ?? '');
+            if ($tableName !== '' && $tableName[0] !== '#') {
+                $tableNames[] = $tableName;
+            }
+        }
+        fclose($fileHandle);
+        return array_values(array_unique($tableNames));
+    }
+
+    /**
+     * Copy freshly imported tables: mysql copies into tables of a separate database that
+     * the framework does not truncate, postgres keeps the rows in COPY format.
+     *
+     * @param Connection $connection
+     * @param string[] $tableNames
+     * @param string $hash
+     * @return array
+     */
+    protected function createScenarioDataSetSnapshot(Connection $connection, array $tableNames, $hash)
+    {
+        $database = $connection->getDatabase();
+        $snapshot = [];
+        if ($connection->getDatabasePlatform() instanceof MySqlPlatform) {
+            $snapshotDatabase = $connection->quoteIdentifier($database . '_fixture');
+            if (!isset(self::$scenarioDataSetSnapshots[$database])) {
+                // Drop copies of earlier runs, the table structure may have changed
+                $connection->exec('DROP DATABASE IF EXISTS ' . $snapshotDatabase);
+                $connection->exec('CREATE DATABASE ' . $snapshotDatabase);
+            }
+            foreach ($tableNames as $tableName) {
+                $snapshotTable = $snapshotDatabase . '.' . $connection->quoteIdentifier(substr($hash, 0, 10) . '_' . $tableName);
+                $connection->exec('CREATE TABLE ' . $snapshotTable . ' LIKE ' . $connection->quoteIdentifier($tableName));
+                $connection->exec('INSERT INTO ' . $snapshotTable . ' SELECT * FROM ' . $connection->quoteIdentifier($tableName));
+                $snapshot[$tableName] = $snapshotTable;
+            }
+        } else {
+            foreach ($tableNames as $tableName) {
+                $columns = $connection->getSchemaManager()->listTableColumns($tableName);
+                $snapshot[$tableName] = [
+                    'rows' => $connection->getWrappedConnection()->pgsqlCopyToArray($tableName),
+                    'sequence' => isset($columns['uid']) && $columns['uid']->getAutoincrement(),
+                ];
+            }
+        }
+        return $snapshot;
+    }
+
+    /**
+     * Restore a copy into empty tables, postgres sequences are set behind the
+     * highest uid like the csv import does
+     *
+     * @param Connection $connection
+     * @param array $snapshot
+     */
+    protected function restoreScenarioDataSetSnapshot(Connection $connection, array $snapshot)
+    {
+        foreach ($snapshot as $tableName => $tableSnapshot) {
+            if ($connection->getDatabasePlatform() instanceof MySqlPlatform) {
+                $connection->exec('INSERT INTO ' . $connection->quoteIdentifier($tableName) . ' SELECT * FROM ' . $tableSnapshot);
+                continue;
+            }
+            if (!empty($tableSnapshot['rows'])) {
+                $connection->getWrappedConnection()->pgsqlCopyFromArray($tableName, $tableSnapshot['rows']);
+            }
+            if ($tableSnapshot['sequence']) {
+                $connection->executeQuery(
+                    'SELECT setval(' . $connection->quote($tableName . '_uid_seq') . ', COALESCE(MAX(uid), 0) + 1, false)'
+                    . ' FROM ' . $connection->quoteIdentifier($tableName)
+                );
+            }
+        }
     }
 
     protected function assertAssertionDataSet($dataSetName)